@@ -0,0 +1,99 @@
+package jigglybot.benchmark;
+
+import jigglybot.ChannelWrapper;
+import jigglybot.battle.BattleEngine;
+import jigglybot.battle.BattleEvents;
+import jigglybot.battle.BattleNarrator;
+import jigglybot.battle.BattleState;
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+import org.openjdk.jmh.annotations.*;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One turn as Battle.fight plays it: turn order, both moves, fainting and experience, and end of turn
+ * damage. Narrated turns queue their messages on a channel with no Discord channel behind it.
+ * The prompt for the next turn and the battle log are left out since they are I/O.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BattleBenchmark
+{
+    public BattleState initial;
+    public Monster m1;
+    public Monster m2;
+    public Move move1;
+    public Move move2;
+
+    public ArrayList<Monster> participants1 = new ArrayList<>();
+    public ArrayList<Monster> participants2 = new ArrayList<>();
+
+    public ChannelWrapper channel;
+    public BattleEvents narrator;
+    public SplittableRandom random;
+
+    @Setup
+    public void setup()
+    {
+        GameData.setup();
+
+        this.random = new SplittableRandom(1);
+
+        this.initial = new BattleState(2);
+        this.initial.roll(0, Species.by_name.get("charizard"), 50, this.random);
+        this.initial.roll(1, Species.by_name.get("blastoise"), 50, this.random);
+        this.initial.wild[0] = false;
+
+        this.m1 = new Monster(this.initial, 0);
+        this.m2 = new Monster(this.initial, 1);
+        this.move1 = MoveList.by_name.get("flamethrower");
+        this.move2 = MoveList.by_name.get("surf");
+
+        this.channel = new ChannelWrapper(0, Mono.empty());
+        this.narrator = new BattleNarrator(this.channel);
+    }
+
+    protected void reset()
+    {
+        this.initial.store(0, this.m1);
+        this.initial.store(1, this.m2);
+
+        this.participants1.clear();
+        this.participants1.add(this.m1);
+        this.participants2.clear();
+        this.participants2.add(this.m2);
+    }
+
+    @Benchmark
+    public int silentTurn()
+    {
+        this.reset();
+
+        BattleEngine.resolve(this.m1, this.move1, this.participants1, this.m2, this.move2, this.participants2,
+                BattleEngine.movesFirst(this.m1, this.move1, this.m2, this.move2, this.random), BattleEvents.silent, this.random);
+
+        return this.m1.hp + this.m2.hp;
+    }
+
+    @Benchmark
+    public int narratedTurn()
+    {
+        this.reset();
+        this.channel.messages.clear();
+
+        BattleEngine.resolve(this.m1, this.move1, this.participants1, this.m2, this.move2, this.participants2,
+                BattleEngine.movesFirst(this.m1, this.move1, this.m2, this.move2, this.random), this.narrator, this.random);
+
+        return this.channel.messages.size();
+    }
+}
@@ -0,0 +1,51 @@
+package jigglybot.benchmark;
+
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The damage formula alone, for a physical, a special and a critical hit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DamageBenchmark
+{
+    public Monster attacker;
+    public Monster defender;
+
+    @Setup
+    public void setup()
+    {
+        GameData.setup();
+
+        SplittableRandom random = new SplittableRandom(1);
+        this.attacker = new Monster(Species.by_name.get("machamp"), 50, random);
+        this.defender = new Monster(Species.by_name.get("snorlax"), 50, random);
+    }
+
+    @Benchmark
+    public int physical()
+    {
+        return Monster.getDamage(this.attacker, this.defender, 80, false, false, 1.5);
+    }
+
+    @Benchmark
+    public int special()
+    {
+        return Monster.getDamage(this.attacker, this.defender, 95, true, false, 2);
+    }
+
+    @Benchmark
+    public int critical()
+    {
+        return Monster.getDamage(this.attacker, this.defender, 80, false, true, 1);
+    }
+}
@@ -0,0 +1,25 @@
+package jigglybot.benchmark;
+
+import jigglybot.battle.action.MoveList;
+import jigglybot.location.Location;
+import jigglybot.monster.Species;
+
+/**
+ * Loads the species, moves and locations once per benchmark JVM; the setup methods aren't safe to run twice.
+ */
+public class GameData
+{
+    protected static boolean loaded = false;
+
+    public static synchronized void setup()
+    {
+        if (loaded)
+            return;
+
+        Species.setup();
+        Location.setup();
+        MoveList.setup();
+
+        loaded = true;
+    }
+}
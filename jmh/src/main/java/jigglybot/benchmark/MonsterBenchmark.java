@@ -0,0 +1,63 @@
+package jigglybot.benchmark;
+
+import jigglybot.UserWrapper;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a new monster, and the text form used by old saves.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonsterBenchmark
+{
+    public Species species;
+    public Monster monster;
+    public String text;
+    public UserWrapper owner;
+    public SplittableRandom random;
+
+    @Setup
+    public void setup()
+    {
+        GameData.setup();
+
+        this.random = new SplittableRandom(1);
+        this.species = Species.by_name.get("dragonite");
+        this.monster = new Monster(this.species, 55, this.random);
+        this.text = this.monster.toString();
+        this.owner = new UserWrapper(1);
+    }
+
+    @Benchmark
+    public Monster construct()
+    {
+        return new Monster(this.species, 55, this.random);
+    }
+
+    @Benchmark
+    public String toText()
+    {
+        return this.monster.toString();
+    }
+
+    @Benchmark
+    public Monster fromText()
+    {
+        return new Monster(this.text, this.owner);
+    }
+
+    @Benchmark
+    public Monster roundTrip()
+    {
+        return new Monster(this.monster.toString(), this.owner);
+    }
+}
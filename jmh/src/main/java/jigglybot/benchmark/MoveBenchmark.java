@@ -0,0 +1,64 @@
+package jigglybot.benchmark;
+
+import jigglybot.battle.BattleEvents;
+import jigglybot.battle.BattleState;
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One use of a move, from accuracy check through damage, recoil and side effects. Both monsters are
+ * put back the way they were before every use, so each one hits a fresh target.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark
+{
+    @Param({"tackle", "thunderbolt", "double-edge", "thunder wave", "swords dance"})
+    public String move;
+
+    public Move m;
+    public Monster attacker;
+    public Monster defender;
+    public BattleState initial;
+    public SplittableRandom random;
+    public ArrayList<Monster> participants = new ArrayList<>();
+
+    @Setup
+    public void setup()
+    {
+        GameData.setup();
+
+        this.random = new SplittableRandom(1);
+        this.m = MoveList.by_name.get(this.move);
+
+        this.initial = new BattleState(2);
+        this.initial.roll(0, Species.by_name.get("pikachu"), 50, this.random);
+        this.initial.roll(1, Species.by_name.get("gyarados"), 50, this.random);
+
+        this.attacker = new Monster(this.initial, 0);
+        this.defender = new Monster(this.initial, 1);
+        this.participants.add(this.attacker);
+    }
+
+    @Benchmark
+    public int execute()
+    {
+        this.initial.store(0, this.attacker);
+        this.initial.store(1, this.defender);
+
+        this.m.execute(this.attacker, this.defender, BattleEvents.silent, this.random, this.participants);
+
+        return this.defender.hp;
+    }
+}
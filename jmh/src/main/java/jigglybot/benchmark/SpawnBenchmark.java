@@ -0,0 +1,46 @@
+package jigglybot.benchmark;
+
+import jigglybot.location.Location;
+import jigglybot.monster.Monster;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A wild encounter, from picking the spawn entry to building the monster.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpawnBenchmark
+{
+    @Param({"ROUTE 1", "VIRIDIAN FOREST", "CERULEAN CAVE"})
+    public String location;
+
+    public Location l;
+    public SplittableRandom random;
+
+    @Setup
+    public void setup()
+    {
+        GameData.setup();
+
+        this.random = new SplittableRandom(1);
+
+        for (Location l: Location.allLocations)
+        {
+            if (l.name.equals(this.location))
+                this.l = l;
+        }
+    }
+
+    @Benchmark
+    public Monster spawn()
+    {
+        return this.l.spawn(this.random);
+    }
+}
@@ -4,16 +4,16 @@ import discord4j.core.DiscordClient;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.gateway.intent.Intent;
 import discord4j.gateway.intent.IntentSet;
-import discord4j.core.event.domain.message.ReactionAddEvent;
 import discord4j.core.object.entity.Member;
-import discord4j.core.object.entity.Message;
-import discord4j.core.object.entity.channel.MessageChannel;
-import discord4j.core.object.reaction.Reaction;
+import jigglybot.battle.BattleLog;
 import jigglybot.battle.action.MoveList;
+import jigglybot.commands.CommandGate;
 import jigglybot.commands.SlashCommandManager;
 import jigglybot.location.Location;
 import jigglybot.monster.Dex;
 import jigglybot.monster.Species;
+import jigglybot.monster.Sprites;
+import jigglybot.save.SaveQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import io.github.cdimascio.dotenv.Dotenv;
@@ -59,6 +59,7 @@ public class Bot
         
         // Initialize game data
         Species.setup();
+        Sprites.setup();
         Location.setup();
         Dex.setup();
         MoveList.setup();
@@ -78,10 +79,10 @@ public class Bot
 
         client = DiscordClient.create(token);
         
-        // Configure gateway intents - minimal intents for slash commands only
+        // Configure gateway intents - minimal intents for slash commands only; paging uses buttons,
+        // which arrive as interactions, so reactions aren't needed
         IntentSet intents = IntentSet.of(
-            Intent.GUILDS,                    // Basic guild information (required for slash commands)
-            Intent.GUILD_MESSAGE_REACTIONS    // Reaction events (for message navigation arrows)
+            Intent.GUILDS                     // Basic guild information (required for slash commands)
         );
         
         gateway = client.gateway()
@@ -98,14 +99,25 @@ public class Bot
         logger.info("Registering slash commands...");
         slashCommandManager.registerCommands();
         
-        // Setup event handlers
+        // Setup event handlers (slash commands and page buttons)
         slashCommandManager.setupEventHandlers();
         
-        // Setup reaction event handler (for message navigation)
-        setupReactionHandler();
+        // Drop users that haven't been active for a while
+        UserWrapper.cache.startEvictionTask();
+
+        // Archive the logs of finished battles
+        BattleLog.startRotationTask();
+
+        // Log command and outbound request stats
+        CommandGate.startStatsTask();
+
+        // Write out any pending saves if the process is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(SaveQueue::shutdown, "jigglybot-shutdown"));
 
         logger.info("JigglyBot is ready!");
         gateway.onDisconnect().block();
+
+        SaveQueue.shutdown();
     }
     
     /**
@@ -140,27 +152,6 @@ public class Bot
         return null;
     }
 
-    private static void setupReactionHandler() {
-        gateway.on(ReactionAddEvent.class).subscribe(event ->
-        {
-            Message message = event.getMessage().block();
-            MessageChannel channel = message.getChannel().block();
-            ChannelWrapper cw = ChannelWrapper.get(channel);
-
-            if (cw.activeMessage == message.getId().asLong())
-            {
-                for (Reaction r: message.getReactions())
-                {
-                    if (r.getEmoji().asUnicodeEmoji().get().getRaw().equals("\uD83D\uDD3D") && r.getCount() > 1)
-                    {
-                        cw.advance();
-                        break;
-                    }
-                }
-            }
-        });
-    }
-
     // Keep the printLocation method as it's used by both legacy and slash commands
     public static String getLocationString(Location l, boolean showCurrent)
     {
@@ -188,9 +179,8 @@ public class Bot
         return s.toString().substring(0, s.length() - 1) + "```";
     }
 
-    public static void printLocation(MessageChannel channel, Member m, boolean showCurrent)
+    public static void printLocation(ChannelWrapper channel, Member m, boolean showCurrent)
     {
-        Location l = ChannelWrapper.get(channel).location;
-        channel.createMessage(getLocationString(l, showCurrent)).block();
+        channel.send(getLocationString(channel.location, showCurrent));
     }
 }
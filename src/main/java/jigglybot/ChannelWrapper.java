@@ -1,92 +1,326 @@
 package jigglybot;
 
-import discord4j.core.object.entity.Message;
+import discord4j.core.object.component.ActionRow;
+import discord4j.core.object.component.Button;
 import discord4j.core.object.entity.channel.MessageChannel;
 import discord4j.core.object.reaction.ReactionEmoji;
-import discord4j.core.spec.legacy.LegacyMessageCreateSpec;
+import discord4j.core.spec.MessageCreateSpec;
 import jigglybot.battle.Battle;
+import jigglybot.commands.CommandGate;
 import jigglybot.location.Location;
+import jigglybot.monster.Sprites;
+import jigglybot.outbound.OutboundScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.function.Consumer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class ChannelWrapper
 {
-    public static HashMap<Long, ChannelWrapper> wrappers = new HashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(ChannelWrapper.class);
+
+    public static final ConcurrentHashMap<Long, ChannelWrapper> wrappers = new ConcurrentHashMap<>();
+
+    /** Discord's limit on message length */
+    public static final int max_message_length = 2000;
+
+    /** Shown on the button of a page that has more after it */
+    public static final String next_page_emoji = "\uD83D\uDD3D";
+
+    /** Custom id prefix of the next page button, followed by {@link #page_nonce}, the channel and page number */
+    public static final String next_page_id = "next";
+
+    /**
+     * Page numbers start over when the bot restarts, so buttons carry this to tell the pages of this run
+     * from old pages with the same numbers.
+     */
+    public static final String page_nonce = Long.toString(System.currentTimeMillis(), 36);
+
+    /** Pages that may be waiting to send before advance() holds back and lets lines pile up into fuller pages */
+    public static final int max_pending_pages = 3;
 
     public Location location = Location.pallet_town;
     public long id;
-    public ArrayList<String> messages = new ArrayList<>();
-    public MessageChannel messageChannel;
+    public ArrayList<Line> messages = new ArrayList<>();
+
+    /** Fetched on first send, so commands never wait on the channel lookup */
+    protected final Mono<MessageChannel> channelSource;
+    protected volatile MessageChannel messageChannel;
 
     public Dialog currentDialog = null;
     public SlashDialog currentSlashDialog = null;
     public Battle currentBattle = null;
 
-    public long activeMessage = -1;
+    /** Number of the page whose button shows the next one, or -1 if there is no next page */
+    public volatile long activePage = -1;
+    protected long pagesSent = 0;
+
+    /** Work for this channel, run one task at a time in the order it was posted */
+    protected final Sinks.Many<Runnable> mailbox = Sinks.many().unicast().onBackpressureBuffer();
+
+    /** Slash commands admitted for this channel that haven't finished yet, see {@link CommandGate} */
+    public final AtomicInteger commands = new AtomicInteger();
 
-    public ChannelWrapper(MessageChannel m, long id)
+    /** Discord requests for this channel, sent one after another in the order they were made */
+    protected final Sinks.Many<Mono<?>> outbox = Sinks.many().unicast().onBackpressureBuffer();
+    protected final AtomicInteger pending = new AtomicInteger();
+    protected final AtomicBoolean advanceDeferred = new AtomicBoolean();
+
+    public ChannelWrapper(long id, Mono<MessageChannel> channel)
     {
-        this.messageChannel = m;
         this.id = id;
+        this.channelSource = channel;
+
+        this.mailbox.asFlux()
+                .concatMap(task -> Mono.fromRunnable(task)
+                        .subscribeOn(CommandGate.workers)
+                        .onErrorResume(e ->
+                        {
+                            logger.error("Failed to run task for channel {}", id, e);
+                            return Mono.empty();
+                        }))
+                .subscribe();
+
+        this.outbox.asFlux()
+                .concatMap(request -> request.onErrorResume(e ->
+                {
+                    logger.warn("Failed to send message to channel {}", id, e);
+                    return Mono.empty();
+                }))
+                .subscribe();
     }
 
-    public static ChannelWrapper get(MessageChannel m)
+    /**
+     * Runs the task on this channel's mailbox. Tasks for one channel never overlap, so battles, dialogs
+     * and the message queue need no other locking; different channels run in parallel.
+     *
+     * Cancelling the returned Mono drops the task if it is still waiting its turn. One that already
+     * started runs to the end.
+     */
+    public <T> Mono<T> execute(Callable<T> task)
     {
-        long l = m.getId().asLong();
-        ChannelWrapper w = wrappers.get(l);
+        return Mono.defer(() ->
+        {
+            CompletableFuture<T> result = new CompletableFuture<>();
+
+            this.post(() ->
+            {
+                // Cancelled while it waited
+                if (result.isDone())
+                    return;
+
+                try
+                {
+                    result.complete(task.call());
+                }
+                catch (Throwable e)
+                {
+                    result.completeExceptionally(e);
+                }
+            });
 
-        if (w == null)
+            return Mono.fromFuture(result).doOnCancel(() -> result.cancel(false));
+        });
+    }
+
+    public Mono<Void> execute(Runnable task)
+    {
+        return this.execute(() ->
         {
-            w = new ChannelWrapper(m, l);
-            wrappers.put(l, w);
+            task.run();
+            return null;
+        });
+    }
+
+    protected void post(Runnable task)
+    {
+        // A unicast sink only accepts one emitter at a time
+        synchronized (this.mailbox)
+        {
+            this.mailbox.emitNext(task, Sinks.EmitFailureHandler.FAIL_FAST);
         }
+    }
 
-        return w;
+    public static ChannelWrapper get(MessageChannel m)
+    {
+        return get(m.getId().asLong(), Mono.just(m));
+    }
+
+    /**
+     * Looks up a channel by id alone; the channel itself is only fetched if something is sent to it.
+     */
+    public static ChannelWrapper get(long id, Mono<MessageChannel> channel)
+    {
+        return wrappers.computeIfAbsent(id, l -> new ChannelWrapper(l, channel));
+    }
+
+    public Mono<MessageChannel> getChannel()
+    {
+        MessageChannel c = this.messageChannel;
+
+        if (c != null)
+            return Mono.just(c);
+
+        return this.channelSource.doOnNext(m -> this.messageChannel = m);
+    }
+
+    /**
+     * Sends a message without waiting for it. Messages are delivered in the order they were sent.
+     */
+    public void send(String message)
+    {
+        this.send(c -> c.createMessage(message));
+    }
+
+    public void sendImage(byte[] sprite)
+    {
+        if (sprite != null)
+            this.send(c -> c.createMessage(MessageCreateSpec.builder().addFile("icon.png", new ByteArrayInputStream(sprite)).build()));
+    }
+
+    public void send(Function<MessageChannel, Mono<?>> request)
+    {
+        Mono<?> m = OutboundScheduler.schedule(this.id, OutboundScheduler.lane_narration, Mono.defer(() -> this.getChannel().flatMap(request)), OutboundScheduler.now())
+                .doFinally(s -> this.sent());
+
+        this.pending.incrementAndGet();
+        OutboundScheduler.queued.incrementAndGet();
+
+        synchronized (this.outbox)
+        {
+            this.outbox.emitNext(m, Sinks.EmitFailureHandler.FAIL_FAST);
+        }
     }
 
     public void queue(String message)
+    {
+        this.queue(null, message);
+    }
+
+    /**
+     * Queues a line that starts a new page, showing the given sprite (from {@link Sprites}).
+     */
+    public void queue(byte[] sprite, String message)
     {
         if (message != null)
-            this.messages.add(message);
+            this.messages.add(new Line(sprite, message));
+    }
+
+    protected void sent()
+    {
+        this.pending.decrementAndGet();
+        OutboundScheduler.queued.decrementAndGet();
+
+        // Several sends can finish at once; only the one that clears the flag posts the page
+        if (this.pending.get() < max_pending_pages && this.advanceDeferred.compareAndSet(true, false))
+            this.post(this::advance);
     }
 
+    /**
+     * Sends the next page of queued lines as one message: as many lines as fit in Discord's length limit,
+     * stopping before the next sprite so each sprite goes out with its own lines. If lines are left over,
+     * the page gets a button that shows the next one.
+     *
+     * While the outbox is backed up, the page is put off until it drains; lines queued meanwhile are
+     * merged into the same page rather than each costing a request.
+     */
     public void advance()
     {
         if (this.messages.isEmpty())
             return;
 
-        String s = this.messages.remove(0);
+        if (this.pending.get() >= max_pending_pages)
+        {
+            this.advanceDeferred.set(true);
+
+            // The outbox may have drained while the flag was being set. If a send cleared it first, that send posted the page
+            if (this.pending.get() >= max_pending_pages || !this.advanceDeferred.compareAndSet(true, false))
+                return;
+        }
+
+        byte[] sprite = null;
+        StringBuilder page = new StringBuilder();
 
-        if (s.startsWith("*"))
+        while (!this.messages.isEmpty())
         {
-            String img = s.substring(1, s.lastIndexOf("*"));
-            s = s.substring(s.lastIndexOf("*") + 1);
+            Line l = this.messages.get(0);
+            String s = l.text;
 
-            messageChannel.createMessage(new Consumer<LegacyMessageCreateSpec>()
+            boolean empty = page.length() == 0 && sprite == null;
+
+            if (!empty && (l.sprite != null || page.length() + 1 + s.length() > max_message_length))
+                break;
+
+            this.messages.remove(0);
+
+            if (l.sprite != null)
+                sprite = l.sprite;
+
+            // A single line too long for a message is continued on the next page
+            if (s.length() > max_message_length)
             {
-                @Override
-                public void accept(LegacyMessageCreateSpec messageCreateSpec)
-                {
-                    messageCreateSpec.addFile("/icon.png", getClass().getResourceAsStream(img));
-                }
-            }).block();
+                this.messages.add(0, new Line(null, s.substring(max_message_length)));
+                s = s.substring(0, max_message_length);
+            }
+
+            if (page.length() > 0)
+                page.append("\n");
+
+            page.append(s);
         }
 
-        Message m = messageChannel.createMessage(s).block();
+        String text = page.toString();
+        byte[] file = sprite;
+        boolean more = !this.messages.isEmpty();
+        long number = this.pagesSent++;
+        this.activePage = more ? number : -1;
 
-        if (this.messages.size() > 0)
+        this.send(c ->
         {
-            this.activeMessage = m.getId().asLong();
-            m.addReaction(ReactionEmoji.unicode("\uD83D\uDD3D")).block();
-        }
-        else
-            this.activeMessage = -1;
+            MessageCreateSpec.Builder spec = MessageCreateSpec.builder().content(text);
+
+            if (file != null)
+                spec.addFile("icon.png", new ByteArrayInputStream(file));
+
+            if (more)
+                spec.addComponent(ActionRow.of(Button.primary(next_page_id + ":" + page_nonce + ":" + this.id + ":" + number, ReactionEmoji.unicode(next_page_emoji), "Next")));
+
+            return c.createMessage(spec.build());
+        });
+    }
+
+    /**
+     * Shows the next page if the given page is still the one with the next page button.
+     */
+    public void advance(long fromPage)
+    {
+        if (this.activePage == fromPage)
+            this.advance();
     }
 
     public boolean isClear()
     {
         return this.messages.isEmpty();
     }
+
+    public static class Line
+    {
+        public final byte[] sprite;
+        public final String text;
+
+        public Line(byte[] sprite, String text)
+        {
+            this.sprite = sprite;
+            this.text = text;
+        }
+    }
 }
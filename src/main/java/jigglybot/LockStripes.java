@@ -0,0 +1,30 @@
+package jigglybot;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared out by id, so each user gets a lock without keeping one
+ * per id forever. Two ids may share a stripe, which only costs some parallelism.
+ *
+ * Used for users, which can act in several channels at once and are also written by the save thread.
+ * Channels don't need locks since each runs its work through its own mailbox.
+ */
+public class LockStripes
+{
+    protected final ReentrantLock[] locks;
+
+    public LockStripes(int stripes)
+    {
+        this.locks = new ReentrantLock[stripes];
+
+        for (int i = 0; i < stripes; i++)
+            this.locks[i] = new ReentrantLock();
+    }
+
+    public ReentrantLock get(long id)
+    {
+        int h = Long.hashCode(id);
+        h ^= (h >>> 16);
+        return this.locks[Math.floorMod(h, this.locks.length)];
+    }
+}
@@ -0,0 +1,23 @@
+package jigglybot;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers for everything outside a battle, like spawns, trainers and IVs. Each thread has its
+ * own generator so nothing is shared between channels; a battle gets its own seeded generator from
+ * {@link #nextSeed()} so the same seed and inputs play out the same way again.
+ */
+public class Rng
+{
+    protected static final ThreadLocal<SplittableRandom> local = ThreadLocal.withInitial(SplittableRandom::new);
+
+    public static SplittableRandom get()
+    {
+        return local.get();
+    }
+
+    public static long nextSeed()
+    {
+        return local.get().nextLong();
+    }
+}
@@ -0,0 +1,240 @@
+package jigglybot;
+
+import jigglybot.save.SaveQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded cache of loaded users, replacing the old unbounded wrapper map.
+ *
+ * Users are loaded from disk on first access. When the cache is over its size, or a user has been
+ * idle for too long, the least recently used users are evicted; their pending changes are handed
+ * to the {@link SaveQueue} first. Users in a battle are pinned and never evicted.
+ */
+public class UserCache
+{
+    private static final Logger logger = LoggerFactory.getLogger(UserCache.class);
+
+    public final int maxSize;
+    public final long idleTimeoutMs;
+
+    /** In access order, so iteration starts at the least recently used user */
+    protected final LinkedHashMap<Long, UserWrapper> users = new LinkedHashMap<>(16, 0.75f, true);
+
+    public final AtomicLong hits = new AtomicLong();
+    public final AtomicLong misses = new AtomicLong();
+    public final AtomicLong evictions = new AtomicLong();
+
+    protected ScheduledExecutorService sweeper;
+
+    public UserCache(int maxSize, long idleTimeoutMs)
+    {
+        this.maxSize = maxSize;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Returns the cached user, loading it if needed. Loads happen outside the cache's monitor under the
+     * user's lock, so different users load in parallel while two lookups for one user share a single load.
+     */
+    public UserWrapper get(long id)
+    {
+        UserWrapper w = this.lookup(id);
+
+        if (w == null)
+        {
+            ReentrantLock lock = UserWrapper.locks.get(id);
+            lock.lock();
+
+            try
+            {
+                w = this.lookup(id);
+
+                if (w == null)
+                {
+                    this.misses.incrementAndGet();
+
+                    // A user evicted moments ago may still be waiting for its save; reuse it rather than reading a stale file
+                    w = SaveQueue.reclaim(id);
+
+                    if (w == null)
+                    {
+                        w = new UserWrapper(id);
+                        w.load();
+                    }
+
+                    ArrayList<UserWrapper> dropped;
+
+                    synchronized (this)
+                    {
+                        this.users.put(id, w);
+                        dropped = this.removeOverflow(w);
+                    }
+
+                    this.evict(dropped);
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+
+        w.lastAccess = System.currentTimeMillis();
+        return w;
+    }
+
+    protected synchronized UserWrapper lookup(long id)
+    {
+        UserWrapper w = this.users.get(id);
+
+        if (w != null)
+            this.hits.incrementAndGet();
+
+        return w;
+    }
+
+    public synchronized UserWrapper remove(long id)
+    {
+        return this.users.remove(id);
+    }
+
+    public synchronized int size()
+    {
+        return this.users.size();
+    }
+
+    /**
+     * Drops least recently used users until the cache fits. The user just added is what {@link #get} is about to
+     * return, so it is never dropped; if every other user is pinned the cache stays over its size for now.
+     */
+    protected ArrayList<UserWrapper> removeOverflow(UserWrapper added)
+    {
+        ArrayList<UserWrapper> dropped = new ArrayList<>();
+        Iterator<UserWrapper> i = this.users.values().iterator();
+        HashSet<UserWrapper> pinned = null;
+
+        while (this.users.size() > this.maxSize && i.hasNext())
+        {
+            UserWrapper w = i.next();
+
+            if (pinned == null)
+                pinned = getPinned();
+
+            if (w == added || w.inBattle || pinned.contains(w))
+                continue;
+
+            i.remove();
+            dropped.add(w);
+        }
+
+        return dropped;
+    }
+
+    public void evictIdle()
+    {
+        long cutoff = System.currentTimeMillis() - this.idleTimeoutMs;
+        ArrayList<UserWrapper> dropped = new ArrayList<>();
+        HashSet<UserWrapper> pinned = getPinned();
+
+        synchronized (this)
+        {
+            Iterator<UserWrapper> i = this.users.values().iterator();
+
+            while (i.hasNext())
+            {
+                UserWrapper w = i.next();
+
+                if (w.lastAccess >= cutoff)
+                    break;
+
+                if (w.inBattle || pinned.contains(w))
+                    continue;
+
+                i.remove();
+                dropped.add(w);
+            }
+        }
+
+        this.evict(dropped);
+    }
+
+    /**
+     * Users a channel is still waiting on for a dialog. Evicting one would leave the dialog holding a wrapper
+     * that a later {@link #get} no longer returns, so its answer would be saved to a stale copy.
+     */
+    protected static HashSet<UserWrapper> getPinned()
+    {
+        HashSet<UserWrapper> pinned = new HashSet<>();
+
+        for (ChannelWrapper c: ChannelWrapper.wrappers.values())
+        {
+            Dialog d = c.currentDialog;
+            SlashDialog s = c.currentSlashDialog;
+
+            if (d != null && d.user != null)
+                pinned.add(d.user);
+
+            if (s != null && s.user != null)
+                pinned.add(s.user);
+        }
+
+        return pinned;
+    }
+
+    /**
+     * Hands removed users to the save queue. Called outside the cache's monitor, since a flush takes the user's lock.
+     */
+    protected void evict(ArrayList<UserWrapper> dropped)
+    {
+        for (UserWrapper w: dropped)
+        {
+            this.evictions.incrementAndGet();
+            SaveQueue.evict(w);
+        }
+    }
+
+    /**
+     * Starts evicting idle users in the background, checking once a minute.
+     */
+    public synchronized void startEvictionTask()
+    {
+        if (this.sweeper != null)
+            return;
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "jigglybot-user-cache");
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.sweeper.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                this.evictIdle();
+                logger.debug("User cache: {}", this.getStats());
+            }
+            catch (Exception e)
+            {
+                logger.error("Failed to evict idle users", e);
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public String getStats()
+    {
+        return "size=" + this.size() + " hits=" + this.hits.get() + " misses=" + this.misses.get() + " evictions=" + this.evictions.get();
+    }
+}
@@ -1,24 +1,47 @@
 package jigglybot;
 
+import discord4j.core.object.component.ActionRow;
+import discord4j.core.object.component.Button;
+import discord4j.core.object.component.LayoutComponent;
 import discord4j.core.object.entity.Member;
 import jigglybot.dialog.DialogPickNickname;
 import jigglybot.item.Item;
 import jigglybot.monster.Monster;
 import jigglybot.monster.Species;
+import jigglybot.save.Journal;
+import jigglybot.save.LegacySaveMigrator;
+import jigglybot.save.SaveFile;
+import jigglybot.save.SaveQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
-import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class UserWrapper implements ICanBattle
 {
-    public static HashMap<Long, UserWrapper> wrappers = new HashMap<>();
-    public static final String save_dir = "userdata";
+    private static final Logger logger = LoggerFactory.getLogger(UserWrapper.class);
+
+    public static final int max_cached_users = 1000;
+    public static final long idle_timeout_ms = 30 * 60 * 1000;
+
+    public static final LockStripes locks = new LockStripes(64);
+    public static final UserCache cache = new UserCache(max_cached_users, idle_timeout_ms);
+
+    /** Where saves are kept; tests point this somewhere else with the jigglybot.save_dir property */
+    public static final String save_dir = System.getProperty("jigglybot.save_dir", "userdata");
     public static final int entries_per_page = 20;
 
+    /** Custom id prefix of the storage PC page buttons, followed by the channel, user and page number */
+    public static final String storage_page_id = "pc";
+
+    public static final int dirty_squad = 1;
+    public static final int dirty_dex = 2;
+    public static final int dirty_all = 4;
+
     public long id;
     public String name;
     public int page = 0;
@@ -28,10 +51,20 @@ public class UserWrapper implements ICanBattle
     public boolean initialized = false;
     public boolean inBattle = false;
 
+    public volatile long lastAccess;
+
     public int[] dex = new int[Species.currentID];
 
     public ArrayList<Item> items = new ArrayList<>();
 
+    /** Kinds of change waiting for the next flush, and monsters added to storage since then */
+    protected int dirty = 0;
+    protected final ArrayList<Monster> stored = new ArrayList<>();
+
+    /** Sequence number of the last journal record written or replayed, and the number of records since the last snapshot */
+    public long journalSeq = 0;
+    public int journalRecords = 0;
+
     public UserWrapper(long id)
     {
         //items.add(new Item())
@@ -41,21 +74,11 @@ public class UserWrapper implements ICanBattle
         this.dex[Species.by_name.get("charmander").id] = 1;
         this.dex[Species.by_name.get("squirtle").id] = 1;
         this.dex[Species.by_name.get("pikachu").id] = 1;
-
-        this.load();
     }
 
     public static UserWrapper get(Member m)
     {
-        long l = m.getId().asLong();
-        UserWrapper w = wrappers.get(l);
-
-        if (w == null)
-        {
-            w = new UserWrapper(l);
-            wrappers.put(l, w);
-        }
-
+        UserWrapper w = cache.get(m.getId().asLong());
         w.name = m.getDisplayName();
 
         return w;
@@ -66,7 +89,7 @@ public class UserWrapper implements ICanBattle
         this.initialized = true;
         Monster m = new Monster(s, 5);
         m.setOwner(this);
-        c.messageChannel.createMessage("Congratulations! You have received " + m.getName() + "!").block();
+        c.send("Congratulations! You have received " + m.getName() + "!");
         c.currentDialog = new DialogPickNickname(c, this, m);
         c.currentDialog.execute();
     }
@@ -84,7 +107,7 @@ public class UserWrapper implements ICanBattle
         this.squad[0] = m;
         
         // Save the game
-        this.save();
+        this.markDirty(dirty_squad);
     }
 
     public void reset()
@@ -114,13 +137,8 @@ public class UserWrapper implements ICanBattle
         // Clear items
         this.items.clear();
         
-        // Save the reset state
-        this.save();
-        
-        // Also delete the save file for a complete reset
-        if (this.getFile().exists()) {
-            this.getFile().delete();
-        }
+        // Delete the save file for a complete reset, after any save still in progress
+        SaveQueue.delete(this);
     }
 
     @Override
@@ -172,110 +190,195 @@ public class UserWrapper implements ICanBattle
         return this.name;
     }
 
-    public boolean save()
+    /**
+     * Schedules a full save on the save thread; repeated calls within a short window are merged into one write.
+     */
+    public void markDirty()
+    {
+        this.markDirty(dirty_all);
+    }
+
+    /**
+     * Schedules a save of only the given parts (dirty_squad, dirty_dex), which is appended to the journal.
+     */
+    public void markDirty(int flags)
+    {
+        synchronized (this)
+        {
+            this.dirty |= flags;
+        }
+
+        SaveQueue.markDirty(this);
+    }
+
+    /**
+     * Schedules a journal append for a monster just added to the end of storage.
+     */
+    public void markStored(Monster m)
     {
+        synchronized (this)
+        {
+            this.stored.add(m);
+        }
+
+        SaveQueue.markDirty(this);
+    }
+
+    /**
+     * Writes everything marked since the last flush. Squad, dex and storage additions are appended to the
+     * journal; anything else, or a journal due for compaction, writes a full snapshot instead.
+     * Holds the user's lock throughout, so a command can't change the user halfway through a write.
+     */
+    public boolean flush()
+    {
+        ReentrantLock lock = locks.get(this.id);
+        lock.lock();
+
         try
         {
-            File f = this.getFile();
-            
-            // Ensure the parent directory exists
-            File parentDir = f.getParentFile();
-            if (parentDir != null && !parentDir.exists()) {
-                boolean created = parentDir.mkdirs();
-                if (!created) {
-                    System.err.println("Warning: Failed to create userdata directory: " + parentDir.getAbsolutePath());
-                }
-            }
+            return this.flushLocked();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
 
-            if (!f.exists())
-                f.createNewFile();
+    protected boolean flushLocked()
+    {
+        int flags;
+        ArrayList<Monster> added;
 
-            PrintWriter pw = new PrintWriter(f);
+        boolean snapshot;
 
-            pw.println("squad");
+        // Read and clear together, so anything marked meanwhile is left for the next flush
+        synchronized (this)
+        {
+            flags = this.dirty;
+            added = new ArrayList<>(this.stored);
 
-            for (Monster m: this.squad)
-            {
-                if (m != null)
-                    pw.println(m.toString());
-            }
+            if (flags == 0 && added.isEmpty())
+                return true;
 
-            pw.println("storage");
+            snapshot = (flags & dirty_all) != 0 || this.journalRecords >= Journal.compact_after_records || !this.getFile().exists();
 
-            for (Monster m: this.storage)
+            if (!snapshot)
             {
-                pw.println(m.toString());
+                this.dirty = 0;
+                this.stored.clear();
             }
+        }
 
-            pw.println("dex");
+        if (snapshot)
+            return this.save();
+
+        try
+        {
+            this.ensureSaveDir();
+            Journal.append(this, (flags & dirty_squad) != 0, added, (flags & dirty_dex) != 0);
+            return true;
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
 
-            StringBuilder s = new StringBuilder();
-            for (int i = 0; i < this.dex.length; i++)
+            // Fall back to a full snapshot on the retry
+            synchronized (this)
             {
-                s.append(this.dex[i]).append(",");
+                this.dirty |= dirty_all;
             }
 
-            pw.println(s.substring(0, s.length() - 1));
+            return false;
+        }
+    }
 
-            pw.close();
+    /**
+     * Writes a full snapshot and discards the journal it replaces.
+     */
+    public boolean save()
+    {
+        ReentrantLock lock = locks.get(this.id);
+        lock.lock();
+
+        try
+        {
+            return this.saveLocked();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    protected boolean saveLocked()
+    {
+        synchronized (this)
+        {
+            this.dirty = 0;
+            this.stored.clear();
+        }
+
+        try
+        {
+            this.ensureSaveDir();
+            SaveFile.write(this, this.getFile());
+            Journal.delete(this);
 
             return true;
         }
         catch (Exception e)
         {
             e.printStackTrace();
+
+            synchronized (this)
+            {
+                this.dirty |= dirty_all;
+            }
+
             return false;
         }
     }
 
-    public void load()
+    protected void ensureSaveDir()
     {
-        if (!this.getFile().exists())
-            return;
+        File parentDir = this.getFile().getParentFile();
+        if (parentDir != null && !parentDir.exists()) {
+            boolean created = parentDir.mkdirs();
+            if (!created) {
+                System.err.println("Warning: Failed to create userdata directory: " + parentDir.getAbsolutePath());
+            }
+        }
+    }
+
+    public boolean load()
+    {
+        File f = this.getFile();
 
         try
         {
-            BufferedReader br = new BufferedReader(new FileReader(this.getFile()));
-
-            int monsterCount = 0;
-            int mode = 0;
-            String line = br.readLine();
-
-            while (line != null)
+            if (f.exists())
             {
-                if (line.equals("squad"))
-                    mode = 1;
-                else if (line.equals("storage"))
-                    mode = 2;
-                else if (line.equals("dex"))
-                    mode = 3;
+                // Saves without the binary header are from the old text format and are rewritten as binary on the next save
+                if (SaveFile.isBinary(f))
+                    SaveFile.read(this, f);
                 else
                 {
-                    if (mode == 1)
-                    {
-                        this.squad[monsterCount] = new Monster(line, this);
-                        monsterCount++;
-                        this.initialized = true;
-                    }
-                    else if (mode == 2)
-                    {
-                        this.storage.add(new Monster(line, this));
-                    }
-                    else if (mode == 3)
-                    {
-                        String[] s = line.split(",");
-
-                        for (int i = 0; i < s.length; i++)
-                        {
-                            this.dex[i] = Integer.parseInt(s[i]);
-                        }
-                    }
+                    LegacySaveMigrator.read(this, f);
+                    this.dirty = dirty_all;
                 }
-
-                line = br.readLine();
             }
 
-            br.close();
+            try
+            {
+                Journal.replay(this);
+            }
+            catch (Exception e)
+            {
+                // The snapshot is fine; keep it with the records replayed so far and write it out again
+                logger.error("Failed to replay journal for user {}, keeping the snapshot", this.id, e);
+                Journal.quarantine(this);
+                this.markDirty(dirty_all);
+            }
 
             for (Monster m : this.squad)
             {
@@ -288,16 +391,25 @@ public class UserWrapper implements ICanBattle
                 if (m != null)
                     this.dex[m.species.id] = 2;
             }
+
+            return true;
         }
         catch (Exception e)
         {
-            e.printStackTrace();
+            // Keep the unreadable save aside so the next save can't overwrite it
+            File corrupt = new File(f.getPath() + ".corrupt-" + System.currentTimeMillis());
+            logger.error("Failed to load save for user {}, moving it to {}", this.id, corrupt.getName(), e);
+
+            if (f.exists() && !f.renameTo(corrupt))
+                logger.error("Failed to move unreadable save {}", f.getAbsolutePath());
+
+            return false;
         }
     }
 
     public void endBattle()
     {
-        this.save();
+        this.markDirty(dirty_squad | dirty_dex);
 
         for (Monster m: this.squad)
         {
@@ -312,7 +424,7 @@ public class UserWrapper implements ICanBattle
             m.confuseTurns = 0;
 
             if (m.status == Monster.asleep)
-                m.sleepTurns = (int) (Math.random() * 7 + 1);
+                m.sleepTurns = Rng.get().nextInt(1, 8);
 
             m.flinched = false;
         }
@@ -325,7 +437,7 @@ public class UserWrapper implements ICanBattle
 
     public void printMonsters(ChannelWrapper setting)
     {
-        setting.messageChannel.createMessage(this.getMonstersString(setting)).block();
+        setting.send(this.getMonstersString(setting));
     }
 
     public String getMonstersString(ChannelWrapper setting)
@@ -370,4 +482,22 @@ public class UserWrapper implements ICanBattle
 
         return s.toString();
     }
+
+    /**
+     * Buttons that turn the storage PC's pages, or none if it all fits on one page or can't be used here.
+     */
+    public List<LayoutComponent> getStoragePageButtons(ChannelWrapper setting)
+    {
+        boolean pcAccess = setting.location.hasCenter && !inBattle;
+
+        if (!pcAccess || this.storage.size() <= entries_per_page)
+            return Collections.emptyList();
+
+        int last = (this.storage.size() - 1) / entries_per_page;
+        String prefix = storage_page_id + ":" + setting.id + ":" + this.id + ":";
+
+        return Collections.singletonList(ActionRow.of(
+                Button.secondary(prefix + (this.page - 1), "PREV").disabled(this.page <= 0),
+                Button.secondary(prefix + (this.page + 1), "NEXT").disabled(this.page >= last)));
+    }
 }
@@ -0,0 +1,267 @@
+package jigglybot.battle;
+
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plays many one on one battles between every pair of species with {@link BattleEngine} and writes the
+ * results as CSV: the win rate of every species against every other, the average number of turns,
+ * and how much of the opponent's HP each species takes off per turn. Monsters are made like wild ones,
+ * with random IVs and moves, and choose their moves at random.
+ *
+ * The species are split over a fork/join pool by rows. Every row gets its own generator split off from
+ * the seed, so the same seed gives the same results however many cores run it.
+ *
+ * Usage: BalanceSimulator [--battles N] [--level L] [--enemy-level L] [--turns N] [--seed S] [--out DIR]
+ */
+public class BalanceSimulator
+{
+    /** Damage per turn is counted in buckets of 10% of the opponent's max HP, the last one for 100% and over */
+    public static final int damage_buckets = 11;
+
+    /** Rows per task before a range of species stops being split */
+    protected static final int rows_per_task = 4;
+
+    public int battles = 100;
+    public int level = 50;
+    public int enemyLevel = 50;
+    public int maxTurns = 200;
+    public long seed = System.nanoTime();
+
+    public Species[] species;
+
+    public int[][] wins;
+    public int[][] draws;
+    public long[][] turns;
+    public long[][] damage;
+
+    public static void main(String[] args) throws IOException
+    {
+        Species.setup();
+        MoveList.setup();
+
+        BalanceSimulator sim = new BalanceSimulator();
+        File out = new File("simulation");
+
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            String v = args[i + 1];
+
+            switch (args[i])
+            {
+                case "--battles": sim.battles = Integer.parseInt(v); break;
+                case "--level": sim.level = Integer.parseInt(v); sim.enemyLevel = sim.level; break;
+                case "--enemy-level": sim.enemyLevel = Integer.parseInt(v); break;
+                case "--turns": sim.maxTurns = Integer.parseInt(v); break;
+                case "--seed": sim.seed = Long.parseLong(v); break;
+                case "--out": out = new File(v); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        long start = System.nanoTime();
+        sim.run();
+        long time = (System.nanoTime() - start) / 1000000;
+
+        sim.write(out);
+
+        long total = (long) sim.species.length * sim.species.length * sim.battles;
+        System.out.println("Ran " + total + " battles in " + time + " ms (seed " + sim.seed + "), results in " + out);
+    }
+
+    public void run()
+    {
+        ArrayList<Species> list = new ArrayList<>(Species.by_num.values());
+        list.sort(Comparator.comparingInt(s -> s.id));
+        this.species = list.toArray(new Species[0]);
+
+        int n = this.species.length;
+        this.wins = new int[n][n];
+        this.draws = new int[n][n];
+        this.turns = new long[n][n];
+        this.damage = new long[n][damage_buckets];
+
+        ForkJoinPool.commonPool().invoke(new Rows(0, n, new SplittableRandom(this.seed)));
+    }
+
+    /**
+     * Plays all battles of the given row of species against every column.
+     */
+    protected void runRow(int row, SplittableRandom random)
+    {
+        Species a = this.species[row];
+        long[] rowDamage = this.damage[row];
+
+        // Every battle of the row reuses these, so the loop below allocates nothing
+        BattleState state = new BattleState(2);
+        state.roll(0, a, this.level, random);
+        state.roll(1, a, this.enemyLevel, random);
+
+        Monster m1 = new Monster(state, 0);
+        Monster m2 = new Monster(state, 1);
+        BattleEngine e = new BattleEngine(new Monster[]{m1}, new Monster[]{m2}, BattleEvents.silent, random);
+
+        for (int col = 0; col < this.species.length; col++)
+        {
+            Species b = this.species[col];
+
+            for (int i = 0; i < this.battles; i++)
+            {
+                state.roll(0, a, this.level, random);
+                state.roll(1, b, this.enemyLevel, random);
+                state.store(0, m1);
+                state.store(1, m2);
+                e.reset();
+
+                while (!e.isOver() && e.turns < this.maxTurns)
+                {
+                    int hp = m2.hp;
+
+                    e.turn(BattleEngine.chooseMove(m1, BattleEvents.silent, random), BattleEngine.chooseMove(m2, BattleEvents.silent, random));
+
+                    int dealt = Math.max(0, hp - m2.hp);
+                    rowDamage[Math.min(dealt * 10 / m2.maxHp, damage_buckets - 1)]++;
+                }
+
+                int winner = e.getWinner();
+
+                if (winner == 1)
+                    this.wins[row][col]++;
+                else if (winner == 0)
+                    this.draws[row][col]++;
+
+                this.turns[row][col] += e.turns;
+            }
+        }
+    }
+
+    protected class Rows extends RecursiveAction
+    {
+        protected final int from;
+        protected final int to;
+        protected final SplittableRandom random;
+
+        protected Rows(int from, int to, SplittableRandom random)
+        {
+            this.from = from;
+            this.to = to;
+            this.random = random;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from <= rows_per_task)
+            {
+                for (int row = this.from; row < this.to; row++)
+                    runRow(row, this.random.split());
+            }
+            else
+            {
+                int mid = (this.from + this.to) >>> 1;
+                Rows left = new Rows(this.from, mid, this.random.split());
+                Rows right = new Rows(mid, this.to, this.random.split());
+                invokeAll(left, right);
+            }
+        }
+    }
+
+    /**
+     * Writes winrates.csv, turns.csv and damage.csv into the given directory.
+     */
+    public void write(File dir) throws IOException
+    {
+        dir.mkdirs();
+
+        try (PrintWriter w = new PrintWriter(new File(dir, "winrates.csv"), StandardCharsets.UTF_8))
+        {
+            this.writeHeader(w);
+
+            for (int row = 0; row < this.species.length; row++)
+            {
+                w.print(this.species[row].name);
+
+                for (int col = 0; col < this.species.length; col++)
+                    w.print("," + String.format(Locale.ROOT, "%.3f", this.wins[row][col] * 1.0 / this.battles));
+
+                w.println();
+            }
+        }
+
+        try (PrintWriter w = new PrintWriter(new File(dir, "turns.csv"), StandardCharsets.UTF_8))
+        {
+            this.writeHeader(w);
+
+            for (int row = 0; row < this.species.length; row++)
+            {
+                w.print(this.species[row].name);
+
+                for (int col = 0; col < this.species.length; col++)
+                    w.print("," + String.format(Locale.ROOT, "%.2f", this.turns[row][col] * 1.0 / this.battles));
+
+                w.println();
+            }
+        }
+
+        try (PrintWriter w = new PrintWriter(new File(dir, "damage.csv"), StandardCharsets.UTF_8))
+        {
+            w.print("species,win_rate,draw_rate,turns");
+
+            for (int i = 0; i < damage_buckets; i++)
+                w.print(i < damage_buckets - 1 ? ",dmg_" + i * 10 + "_" + (i * 10 + 9) : ",dmg_" + i * 10 + "_plus");
+
+            w.println();
+
+            for (int row = 0; row < this.species.length; row++)
+            {
+                long won = 0;
+                long drawn = 0;
+                long played = 0;
+                long hits = 0;
+
+                for (int col = 0; col < this.species.length; col++)
+                {
+                    won += this.wins[row][col];
+                    drawn += this.draws[row][col];
+                    played += this.turns[row][col];
+                }
+
+                for (long d: this.damage[row])
+                    hits += d;
+
+                long total = (long) this.battles * this.species.length;
+
+                w.print(this.species[row].name + "," + String.format(Locale.ROOT, "%.3f", won * 1.0 / total) + "," + String.format(Locale.ROOT, "%.3f", drawn * 1.0 / total) + "," + String.format(Locale.ROOT, "%.2f", played * 1.0 / total));
+
+                for (long d: this.damage[row])
+                    w.print("," + String.format(Locale.ROOT, "%.4f", hits == 0 ? 0 : d * 1.0 / hits));
+
+                w.println();
+            }
+        }
+    }
+
+    protected void writeHeader(PrintWriter w)
+    {
+        w.print("species");
+
+        for (Species s: this.species)
+            w.print("," + s.name);
+
+        w.println();
+    }
+}
@@ -3,17 +3,28 @@ package jigglybot.battle;
 import jigglybot.ChannelWrapper;
 import jigglybot.dialog.DialogLearnMove;
 import jigglybot.ICanBattle;
+import jigglybot.Rng;
 import jigglybot.UserWrapper;
 import jigglybot.battle.action.*;
 import jigglybot.item.Item;
 import jigglybot.item.PokeBall;
 import jigglybot.monster.Monster;
+import jigglybot.monster.Sprites;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 public class Battle
 {
     public ChannelWrapper channel;
+    public BattleEvents events;
+
+    /**
+     * Every roll in this battle comes from here, so the seed and the chosen actions are enough to play it again.
+     */
+    public final long seed;
+    public final SplittableRandom random;
+    public final BattleLog log;
 
     public UserWrapper player1;
     public ICanBattle player2;
@@ -47,8 +58,17 @@ public class Battle
     public ArrayList<Monster> p2Participants = new ArrayList<>();
 
     public Battle(ChannelWrapper channel, ICanBattle challenger)
+    {
+        this(channel, challenger, Rng.nextSeed());
+    }
+
+    public Battle(ChannelWrapper channel, ICanBattle challenger, long seed)
     {
         this.channel = channel;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.log = new BattleLog(channel.id, seed);
+        this.events = new BattleNarrator(channel);
         this.player2 = challenger;
         //this.p2Mon = challenger.getNextMonster();
         //this.p2Participants.add(p2Mon);
@@ -57,6 +77,10 @@ public class Battle
     public Battle(ChannelWrapper channel, UserWrapper p1, UserWrapper p2)
     {
         this.channel = channel;
+        this.seed = Rng.nextSeed();
+        this.random = new SplittableRandom(this.seed);
+        this.log = new BattleLog(channel.id, this.seed);
+        this.events = new BattleNarrator(channel);
         this.player1 = p1;
         this.player2 = p2;
         this.joinable = false;
@@ -68,11 +92,11 @@ public class Battle
     public void join(UserWrapper player, String mon)
     {
         if (!player.initialized)
-            channel.messageChannel.createMessage("You need to START first!").block();
+            channel.send("You need to START first!");
         else if (this.p1Mon != null) // fix
-            channel.messageChannel.createMessage("You can JOIN when a POKéMON faints!").block();
+            channel.send("You can JOIN when a POKéMON faints!");
         else if (player.inBattle)
-            channel.messageChannel.createMessage("You're already in a battle!").block();
+            channel.send("You're already in a battle!");
         else
         {
             boolean canJoin = false;
@@ -98,7 +122,7 @@ public class Battle
             }
 
             if (!canJoin)
-                channel.messageChannel.createMessage("All your POKéMON have fainted! You need to HEAL!").block();
+                channel.send("All your POKéMON have fainted! You need to HEAL!");
             else if (mon != null)
             {
                 try
@@ -120,9 +144,9 @@ public class Battle
                 canJoin = false;
 
                 if (player.squad[index] == null)
-                    this.channel.messageChannel.createMessage("Please specify POKéMON NO. or NAME!").block();
+                    this.channel.send("Please specify POKéMON NO. or NAME!");
                 else if (player.squad[index].hp <= 0)
-                    this.channel.messageChannel.createMessage("There's no will to fight!").block();
+                    this.channel.send("There's no will to fight!");
                 else
                     canJoin = true;
             }
@@ -130,7 +154,7 @@ public class Battle
             if (canJoin)
             {
                 this.channel.messages.clear();
-                this.channel.activeMessage = -1;
+                this.channel.activePage = -1;
 
                 if (!this.started)
                     channel.queue(player.name + " joined the battle!");
@@ -146,10 +170,7 @@ public class Battle
 
                     if (this.player2 instanceof Trainer)
                     {
-                        String img = ("*" + "/front/" + p2Mon.species.name.toLowerCase())
-                                .replace("♂", "m").replace("♀", "f").replace("'", "").toLowerCase() + ".png*";
-
-                        channel.queue(img + ((Trainer) this.player2).name + " sent out " + this.p2Mon.name + "!");
+                        channel.queue(Sprites.getFront(p2Mon.species), ((Trainer) this.player2).name + " sent out " + this.p2Mon.name + "!");
                     }
 
                     this.p1Participants.clear();
@@ -188,23 +209,22 @@ public class Battle
 
                 this.p1Participants.add(p1Mon);
 
-                String img = ("*" + "/back/" + p1Mon.species.name.toLowerCase())
-                        .replace("♂", "m").replace("♀", "f").replace("'", "").toLowerCase() + "b.png*";
+                byte[] img = Sprites.getBack(p1Mon.species);
 
                 if (p2Mon == null)
-                    channel.queue(img + "Go " + p1Mon.getName() + "!");
+                    channel.queue(img, "Go " + p1Mon.getName() + "!");
                 else
                 {
                     double frac = p2Mon.hp * 1.0 / p2Mon.maxHp;
 
                     if (frac >= 0.7)
-                        channel.queue(img + "Go! " + p1Mon.getName() + "!");
+                        channel.queue(img, "Go! " + p1Mon.getName() + "!");
                     else if (frac >= 0.4)
-                        channel.queue(img + "Do it! " + p1Mon.getName() + "!");
+                        channel.queue(img, "Do it! " + p1Mon.getName() + "!");
                     else if (frac >= 0.1)
-                        channel.queue(img + "Get'm! " + p1Mon.getName() + "!");
+                        channel.queue(img, "Get'm! " + p1Mon.getName() + "!");
                     else
-                        channel.queue(img + "The enemy's weak! Get'm! " + p1Mon.getName() + "!");
+                        channel.queue(img, "The enemy's weak! Get'm! " + p1Mon.getName() + "!");
                 }
 
                 this.turnStart();
@@ -216,13 +236,13 @@ public class Battle
     {
         if (in == null)
         {
-            this.channel.messageChannel.createMessage("Please specify move!").block();
+            this.channel.send("Please specify move!");
             return;
         }
 
         if ((user != this.player1 && !this.p2sTurn) || (user != this.player2 && this.p2sTurn))
         {
-            this.channel.messageChannel.createMessage("Can't do this now!").block();
+            this.channel.send("Can't do this now!");
             return;
         }
 
@@ -234,7 +254,7 @@ public class Battle
         Move mo = MoveList.by_name.get(in.toLowerCase());
 
         if (mo == null)
-            this.channel.messageChannel.createMessage("Invalid move!").block();
+            this.channel.send("Invalid move!");
         else
         {
             this.channel.currentDialog = new DialogLearnMove(this.channel, user, m, mo);
@@ -245,9 +265,9 @@ public class Battle
     public void inputFight(UserWrapper user, String in)
     {
         if (user != this.player1 && user != this.player2)
-            this.channel.messageChannel.createMessage("You must JOIN the battle!").block();
+            this.channel.send("You must JOIN the battle!");
         else if (in == null)
-            this.channel.messageChannel.createMessage("Please specify ATTACK!").block();
+            this.channel.send("Please specify ATTACK!");
         else
         {
             Monster m = this.p1Mon;
@@ -278,26 +298,26 @@ public class Battle
                     {
                         if (m.moves[i] != null && m.movePP[i] > 0)
                         {
-                            this.channel.messageChannel.createMessage("No PP left for this move!").block();
+                            this.channel.send("No PP left for this move!");
                             return;
                         }
                     }
 
-                    this.channel.queue(m.getName() + " has no moves left!");
+                    this.events.noMovesLeft(m);
                     this.actionDecided(Move.struggle);
                 }
             }
             else
-                this.channel.messageChannel.createMessage("Invalid move!").block();
+                this.channel.send("Invalid move!");
         }
     }
 
     public void inputRun(UserWrapper user)
     {
         if (user != this.player1 && user != this.player2)
-            this.channel.messageChannel.createMessage("You must JOIN the battle!").block();
+            this.channel.send("You must JOIN the battle!");
         else if (!this.joinable) //TODO add trainer
-            this.channel.messageChannel.createMessage("No! There's no running from a trainer battle!").block();
+            this.channel.send("No! There's no running from a trainer battle!");
         else
             this.actionDecided(new Run());
     }
@@ -305,7 +325,7 @@ public class Battle
     public void inputCapture(UserWrapper user)
     {
         if (user != this.player1)
-            this.channel.messageChannel.createMessage("You must JOIN the battle!").block();
+            this.channel.send("You must JOIN the battle!");
         else
             this.actionDecided(new UseItem(new Item(PokeBall.pokeBall)));
     }
@@ -313,11 +333,11 @@ public class Battle
     public void inputSwitch(UserWrapper user, String in)
     {
         if (user != this.player1 && user != this.player2)
-            this.channel.messageChannel.createMessage("You must JOIN the battle!").block();
+            this.channel.send("You must JOIN the battle!");
         else if ((user == this.player1 && this.p2sTurn) || (user == this.player2 && !this.p2sTurn))
-            this.channel.messageChannel.createMessage("Can't do this now!").block();
+            this.channel.send("Can't do this now!");
         else if (in == null)
-            this.channel.messageChannel.createMessage("Please specify POKéMON NO. or NAME!").block();
+            this.channel.send("Please specify POKéMON NO. or NAME!");
         else
         {
             int index = 0;
@@ -339,11 +359,11 @@ public class Battle
             }
 
             if (user.squad[index] == null)
-                this.channel.messageChannel.createMessage("Please specify POKéMON NO. or NAME!").block();
+                this.channel.send("Please specify POKéMON NO. or NAME!");
             else if (user.squad[index].hp <= 0)
-                this.channel.messageChannel.createMessage("There's no will to fight!").block();
+                this.channel.send("There's no will to fight!");
             else if (user.squad[index] == this.p1Mon || user.squad[index] == this.p2Mon)
-                this.channel.messageChannel.createMessage(user.squad[index].getName() + " is already out!").block();
+                this.channel.send(user.squad[index].getName() + " is already out!");
             else
                 this.actionDecided(new SwitchMonster(user.squad[index]));
         }
@@ -363,7 +383,10 @@ public class Battle
             else if (a instanceof UseItem)
                 ((UseItem) a).item.useForBattle(this, this.player1, this.channel);
             else if (a instanceof SwitchMonster)
+            {
                 this.p1Mon = ((SwitchMonster) a).execute(this, this.p1Mon, this.p1Damage, this.p2Mon.maxHp, this.p2Mon.hp * 1.0 / this.p2Mon.maxHp);
+                this.log.switched(1, this.p1Mon);
+            }
             else if (a instanceof Run)
             {
                 this.p1Runs++;
@@ -376,6 +399,7 @@ public class Battle
             if (this.ended)
             {
                 this.channel.currentBattle = null;
+                this.log.close();
                 this.player1.inBattle = false;
                 this.player1.endBattle();
 
@@ -398,7 +422,10 @@ public class Battle
             else if (a instanceof UseItem)
                 ((UseItem) a).item.useForBattle(this, this.player2, this.channel);
             else if (a instanceof SwitchMonster)
+            {
                 this.p2Mon = ((SwitchMonster) a).execute(this, this.p2Mon, this.p2Damage, this.p1Mon.maxHp, this.p1Mon.hp * 1.0 / this.p1Mon.maxHp);
+                this.log.switched(2, this.p2Mon);
+            }
             else if (a instanceof Run)
             {
                 this.p2Runs++;
@@ -411,6 +438,7 @@ public class Battle
             if (this.ended)
             {
                 this.channel.currentBattle = null;
+                this.log.close();
                 this.player1.inBattle = false;
                 this.player1.endBattle();
 
@@ -450,64 +478,15 @@ public class Battle
             this.p2Runs = 0;
         }
 
-        boolean p1first = Math.random() < 0.5;
-
-        if (p1.priority > p2.priority)
-            p1first = true;
-        else if (p1.priority < p2.priority)
-            p1first = false;
-        else
-        {
-            double p1speed = p1Mon.speed * p1Mon.getStageMultiplier(Monster.stage_speed) * p1Mon.getEffectSpeedMultiplier();
-            double p2speed = p2Mon.speed * p2Mon.getStageMultiplier(Monster.stage_speed) * p2Mon.getEffectSpeedMultiplier();
-
-            if (p1speed > p2speed)
-                p1first = true;
-            else if (p2speed > p1speed)
-                p1first = false;
-        }
-
         int p1health = p1Mon.hp;
         int p2health = p2Mon.hp;
 
-        if (p1first)
-        {
-            if (testConditions(this.p1Mon))
-                p1.execute(this.p1Mon, this.p2Mon, cw, this.p1Participants);
+        this.log.turn(this.p1Mon, p1, this.p1Participants, this.p2Mon, p2, this.p2Participants);
 
-            if (!this.testFaint())
-            {
-                if (testConditions(this.p2Mon))
-                    p2.execute(this.p2Mon, this.p1Mon, cw, this.p2Participants);
+        BattleEngine.resolve(this.p1Mon, p1, this.p1Participants, this.p2Mon, p2, this.p2Participants,
+                BattleEngine.movesFirst(this.p1Mon, p1, this.p2Mon, p2, this.random), this.events, this.random);
 
-                if (!this.testFaint())
-                {
-                    this.applyConditionDamage(this.p1Mon);
-                    this.applyConditionDamage(this.p2Mon);
-
-                    this.testFaint();
-                }
-            }
-        }
-        else
-        {
-            if (testConditions(this.p2Mon))
-                p2.execute(this.p2Mon, this.p1Mon, cw, this.p2Participants);
-
-            if (!this.testFaint())
-            {
-                if (testConditions(this.p1Mon))
-                    p1.execute(this.p1Mon, this.p2Mon, cw, this.p1Participants);
-
-                if (!this.testFaint())
-                {
-                    this.applyConditionDamage(this.p1Mon);
-                    this.applyConditionDamage(this.p2Mon);
-
-                    this.testFaint();
-                }
-            }
-        }
+        this.log.turnEnded();
 
         this.p1Mon.flinched = false;
         this.p2Mon.flinched = false;
@@ -542,6 +521,7 @@ public class Battle
                     this.channel.queue(((UserWrapper)this.player2).name + " defeated " + this.player1.name + "!");
                     this.ended = true;
                     this.channel.currentBattle = null;
+                    this.log.close();
                 }
             }
         }
@@ -572,6 +552,7 @@ public class Battle
                     this.channel.queue(this.player1.name + " defeated " + ((UserWrapper)this.player2).name + "!");
                     this.ended = true;
                     this.channel.currentBattle = null;
+                    this.log.close();
                 }
             }
         }
@@ -605,6 +586,7 @@ public class Battle
                     // Player has no more Pokemon - they lose the battle
                     this.channel.queue(this.player2.getName() + " wins! " + this.player1.name + " has no more POKéMON!");
                     this.channel.currentBattle = null;
+                    this.log.close();
                     this.ended = true;
                 }
                 else
@@ -616,6 +598,7 @@ public class Battle
             {
                 this.channel.queue(this.player2.getName() + " was defeated!");
                 this.channel.currentBattle = null;
+                this.log.close();
             }
 
             this.player1.inBattle = false;
@@ -627,137 +610,4 @@ public class Battle
             this.channel.advance();
         }
     }
-
-    public boolean testFaint()
-    {
-        for (int i = 0; i < this.p1Participants.size(); i++)
-        {
-            if (this.p1Participants.get(i).hp <= 0)
-            {
-                this.p1Participants.remove(i);
-                i--;
-            }
-        }
-
-        for (int i = 0; i < this.p2Participants.size(); i++)
-        {
-            if (this.p2Participants.get(i).hp <= 0)
-            {
-                this.p2Participants.remove(i);
-                i--;
-            }
-        }
-
-        boolean a = this.testFaint(this.p1Mon, this.p2Participants);
-        boolean b = this.testFaint(this.p2Mon, this.p1Participants);
-
-        return a || b;
-    }
-
-    public boolean testFaint(Monster defender, ArrayList<Monster> participants)
-    {
-        if (defender.hp <= 0)
-        {
-            defender.hp = 0;
-
-            this.channel.queue(defender.getName() + " fainted!");
-
-            for (Monster m: participants)
-            {
-                if (!m.isWild)
-                {
-                    int xp = m.xp;
-                    boolean lvlup = m.defeatedEnemy(defender, participants.size());
-
-                    this.channel.queue(m.getName() + " gained " + (m.xp - xp) + " EXP. Points!");
-
-                    if (lvlup)
-                        this.channel.queue(m.getName() + " grew to level " + m.level + "!");
-                }
-            }
-
-            return true;
-        }
-
-        return false;
-    }
-
-    public boolean testConditions(Monster m)
-    {
-        if (m.status == Monster.asleep)
-        {
-            m.sleepTurns--;
-
-            if (m.sleepTurns == 0)
-            {
-                m.status = 0;
-                channel.queue(m.getName() + " woke up!");
-            }
-            else
-                channel.queue(m.getName() + " is fast asleep!");
-
-            return false;
-        }
-        else if (m.status == Monster.paralyzed)
-        {
-            if (Math.random() < 0.25)
-            {
-                channel.queue(m.getName() + "'s fully paralyzed!");
-                return false;
-            }
-        }
-        else if (m.status == Monster.frozen)
-        {
-            channel.queue(m.getName() + " is frozen solid!");
-            return false;
-        }
-        else if (m.flinched)
-        {
-            channel.queue(m.getName() + " flinched!");
-            return false;
-        }
-        else if (m.confuseTurns > 0)
-        {
-            m.confuseTurns--;
-
-            if (m.confuseTurns <= 0)
-                channel.queue(m.getName() + "'s confused no more!");
-            else
-            {
-                channel.queue(m.getName() + " is confused!");
-
-                if (Math.random() < 0.5)
-                {
-                    channel.queue("It hurt itself in its confusion!");
-
-                    m.hp -= Monster.getDamage(m, m, 40, false, false, 1);
-
-                    if (m.hp < 0)
-                        m.hp = 0;
-
-                    channel.queue(m.getName() + "'s HP: " + m.hp + "/" + m.maxHp);
-
-                    return false;
-                }
-            }
-        }
-
-        return true;
-    }
-
-    public void applyConditionDamage(Monster m)
-    {
-        if (m.status == Monster.poisoned || m.status == Monster.burned)
-        {
-            if (m.status == Monster.burned)
-                channel.queue(m.getName() + "'s hurt by the burn!");
-            else
-                channel.queue(m.getName() + "'s hurt by poison!");
-
-            m.hp = Math.max(m.hp - Math.max(m.maxHp / 16, 1), 0);
-
-            channel.queue(m.getName() + "'s HP: " + m.hp + "/" + m.maxHp);
-        }
-
-    }
 }
@@ -0,0 +1,348 @@
+package jigglybot.battle;
+
+import jigglybot.Rng;
+import jigglybot.battle.action.Move;
+import jigglybot.monster.Monster;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * The battle rules with no channel or players attached: turn order, status conditions, moves,
+ * fainting and experience. {@link Battle} uses the static rules for battles in Discord, reporting
+ * to a {@link BattleNarrator}.
+ *
+ * An instance runs a whole battle between two teams, for simulations: every turn each side uses
+ * the move it is given (or a random one, see {@link #run}) and fainted monsters are replaced by the
+ * next healthy one in their team until a team runs out.
+ *
+ * Every random roll comes from the given generator, so a battle started from the same seed with the
+ * same moves always ends the same way.
+ */
+public class BattleEngine
+{
+    public final Monster[] team1;
+    public final Monster[] team2;
+    public final BattleEvents events;
+    public final SplittableRandom random;
+
+    public Monster mon1;
+    public Monster mon2;
+
+    public final ArrayList<Monster> participants1 = new ArrayList<>();
+    public final ArrayList<Monster> participants2 = new ArrayList<>();
+
+    public int turns = 0;
+
+    public BattleEngine(Monster[] team1, Monster[] team2, BattleEvents events)
+    {
+        this(team1, team2, events, new SplittableRandom(Rng.nextSeed()));
+    }
+
+    public BattleEngine(Monster[] team1, Monster[] team2, BattleEvents events, SplittableRandom random)
+    {
+        this.team1 = team1;
+        this.team2 = team2;
+        this.events = events;
+        this.random = random;
+
+        this.reset();
+    }
+
+    /**
+     * Starts over with whatever monsters are in the teams now, so simulations can reuse one engine for many battles.
+     */
+    public void reset()
+    {
+        this.mon1 = getNext(this.team1);
+        this.mon2 = getNext(this.team2);
+
+        this.participants1.clear();
+        this.participants2.clear();
+
+        if (this.mon1 != null)
+            this.participants1.add(this.mon1);
+
+        if (this.mon2 != null)
+            this.participants2.add(this.mon2);
+
+        this.turns = 0;
+    }
+
+    public boolean isOver()
+    {
+        return this.mon1 == null || this.mon2 == null;
+    }
+
+    /**
+     * Returns 1 or 2 for the side that still has monsters left, or 0 if the battle isn't over or both ran out.
+     */
+    public int getWinner()
+    {
+        if (this.mon1 != null && this.mon2 == null)
+            return 1;
+        else if (this.mon2 != null && this.mon1 == null)
+            return 2;
+        else
+            return 0;
+    }
+
+    public void turn(Move move1, Move move2)
+    {
+        resolve(this.mon1, move1, this.participants1, this.mon2, move2, this.participants2, movesFirst(this.mon1, move1, this.mon2, move2, this.random), this.events, this.random);
+
+        this.mon1.flinched = false;
+        this.mon2.flinched = false;
+
+        if (this.mon1.hp <= 0)
+        {
+            this.participants1.remove(this.mon1);
+            this.participants2.clear();
+            this.mon1 = getNext(this.team1);
+        }
+
+        if (this.mon2.hp <= 0)
+        {
+            this.participants2.remove(this.mon2);
+            this.participants1.clear();
+            this.mon2 = getNext(this.team2);
+        }
+
+        // Whoever is still out has fought the new opponent, or is about to
+        if (this.mon1 != null && !this.participants1.contains(this.mon1))
+            this.participants1.add(this.mon1);
+
+        if (this.mon2 != null && !this.participants2.contains(this.mon2))
+            this.participants2.add(this.mon2);
+
+        this.turns++;
+    }
+
+    /**
+     * Plays turns with randomly chosen moves until one team runs out or the turn limit is hit, and returns the winner.
+     */
+    public int run(int maxTurns)
+    {
+        while (!this.isOver() && this.turns < maxTurns)
+            this.turn(chooseMove(this.mon1, this.events, this.random), chooseMove(this.mon2, this.events, this.random));
+
+        return this.getWinner();
+    }
+
+    public static Monster getNext(Monster[] team)
+    {
+        for (Monster m: team)
+        {
+            if (m != null && m.hp > 0)
+                return m;
+        }
+
+        return null;
+    }
+
+    /**
+     * Picks a random move with PP left, or STRUGGLE if there is none, like a wild monster does.
+     */
+    public static Move chooseMove(Monster m, BattleEvents events, SplittableRandom random)
+    {
+        int valid = 0;
+
+        for (int i = 0; i < m.moves.length; i++)
+        {
+            if (m.moves[i] != null && m.movePP[i] > 0)
+                valid++;
+        }
+
+        if (valid == 0)
+        {
+            events.noMovesLeft(m);
+            return Move.struggle;
+        }
+
+        int pick = random.nextInt(valid);
+
+        for (int i = 0; i < m.moves.length; i++)
+        {
+            if (m.moves[i] != null && m.movePP[i] > 0 && pick-- == 0)
+                return m.moves[i];
+        }
+
+        return Move.struggle;
+    }
+
+    /**
+     * Decides whether a moves before b: higher priority first, then higher speed, with ties decided at random.
+     */
+    public static boolean movesFirst(Monster a, Move aMove, Monster b, Move bMove, SplittableRandom random)
+    {
+        boolean first = random.nextBoolean();
+
+        if (aMove.priority > bMove.priority)
+            first = true;
+        else if (aMove.priority < bMove.priority)
+            first = false;
+        else
+        {
+            double aSpeed = a.speed * a.getStageMultiplier(Monster.stage_speed) * a.getEffectSpeedMultiplier();
+            double bSpeed = b.speed * b.getStageMultiplier(Monster.stage_speed) * b.getEffectSpeedMultiplier();
+
+            if (aSpeed > bSpeed)
+                first = true;
+            else if (bSpeed > aSpeed)
+                first = false;
+        }
+
+        return first;
+    }
+
+    /**
+     * Plays out one exchange of moves in the given order, stopping as soon as something faints;
+     * if nothing does, poison and burn damage is applied at the end.
+     */
+    public static void resolve(Monster a, Move aMove, ArrayList<Monster> aParticipants, Monster b, Move bMove, ArrayList<Monster> bParticipants, boolean aFirst, BattleEvents events, SplittableRandom random)
+    {
+        Monster first = aFirst ? a : b;
+        Monster second = aFirst ? b : a;
+        Move firstMove = aFirst ? aMove : bMove;
+        Move secondMove = aFirst ? bMove : aMove;
+        ArrayList<Monster> firstParticipants = aFirst ? aParticipants : bParticipants;
+        ArrayList<Monster> secondParticipants = aFirst ? bParticipants : aParticipants;
+
+        if (testConditions(first, events, random))
+            firstMove.execute(first, second, events, random, firstParticipants);
+
+        if (!testFaint(a, aParticipants, b, bParticipants, events))
+        {
+            if (testConditions(second, events, random))
+                secondMove.execute(second, first, events, random, secondParticipants);
+
+            if (!testFaint(a, aParticipants, b, bParticipants, events))
+            {
+                applyConditionDamage(a, events);
+                applyConditionDamage(b, events);
+
+                testFaint(a, aParticipants, b, bParticipants, events);
+            }
+        }
+    }
+
+    /**
+     * Drops fainted monsters from both participant lists, then checks both monsters in battle.
+     */
+    public static boolean testFaint(Monster a, ArrayList<Monster> aParticipants, Monster b, ArrayList<Monster> bParticipants, BattleEvents events)
+    {
+        aParticipants.removeIf(m -> m.hp <= 0);
+        bParticipants.removeIf(m -> m.hp <= 0);
+
+        boolean aFainted = testFaint(a, bParticipants, events);
+        boolean bFainted = testFaint(b, aParticipants, events);
+
+        return aFainted || bFainted;
+    }
+
+    /**
+     * If the defender has fainted, gives experience to the trained monsters that fought it.
+     */
+    public static boolean testFaint(Monster defender, ArrayList<Monster> participants, BattleEvents events)
+    {
+        if (defender.hp <= 0)
+        {
+            defender.hp = 0;
+
+            events.fainted(defender);
+
+            for (Monster m: participants)
+            {
+                if (!m.isWild)
+                {
+                    int xp = m.xp;
+                    boolean lvlup = m.defeatedEnemy(defender, participants.size());
+
+                    events.xpGained(m, m.xp - xp, lvlup);
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks the status conditions that can stop a monster from moving this turn, and returns whether it may move.
+     */
+    public static boolean testConditions(Monster m, BattleEvents events, SplittableRandom random)
+    {
+        if (m.status == Monster.asleep)
+        {
+            m.sleepTurns--;
+
+            if (m.sleepTurns == 0)
+            {
+                m.status = 0;
+                events.condition(m, BattleEvents.condition_woke_up);
+            }
+            else
+                events.condition(m, BattleEvents.condition_asleep);
+
+            return false;
+        }
+        else if (m.status == Monster.paralyzed)
+        {
+            if (random.nextInt(4) == 0)
+            {
+                events.condition(m, BattleEvents.condition_fully_paralyzed);
+                return false;
+            }
+        }
+        else if (m.status == Monster.frozen)
+        {
+            events.condition(m, BattleEvents.condition_frozen);
+            return false;
+        }
+        else if (m.flinched)
+        {
+            events.condition(m, BattleEvents.condition_flinched);
+            return false;
+        }
+        else if (m.confuseTurns > 0)
+        {
+            m.confuseTurns--;
+
+            if (m.confuseTurns <= 0)
+                events.condition(m, BattleEvents.condition_confusion_ended);
+            else
+            {
+                events.condition(m, BattleEvents.condition_confused);
+
+                if (random.nextBoolean())
+                {
+                    events.condition(m, BattleEvents.condition_hurt_in_confusion);
+
+                    m.hp -= Monster.getDamage(m, m, 40, false, false, 1);
+
+                    if (m.hp < 0)
+                        m.hp = 0;
+
+                    events.hpChanged(m);
+
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    public static void applyConditionDamage(Monster m, BattleEvents events)
+    {
+        if (m.status == Monster.poisoned || m.status == Monster.burned)
+        {
+            events.conditionDamage(m, m.status);
+
+            m.hp = Math.max(m.hp - Math.max(m.maxHp / 16, 1), 0);
+
+            events.hpChanged(m);
+        }
+    }
+}
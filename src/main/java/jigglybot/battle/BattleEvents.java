@@ -0,0 +1,62 @@
+package jigglybot.battle;
+
+import jigglybot.battle.action.Move;
+import jigglybot.monster.Monster;
+
+/**
+ * Everything the battle rules report while resolving a turn. The rules in {@link BattleEngine} and
+ * {@link Move} never talk to a channel themselves; {@link BattleNarrator} turns these events into
+ * messages, and simulations use {@link #silent}. Every event does nothing unless overridden.
+ */
+public interface BattleEvents
+{
+    BattleEvents silent = new BattleEvents() {};
+
+    int condition_woke_up = 0;
+    int condition_asleep = 1;
+    int condition_fully_paralyzed = 2;
+    int condition_frozen = 3;
+    int condition_flinched = 4;
+    int condition_confusion_ended = 5;
+    int condition_confused = 6;
+    int condition_hurt_in_confusion = 7;
+
+    default void moveUsed(Monster attacker, Move move) {}
+
+    default void moveMissed(Monster attacker, Monster defender, Move move) {}
+
+    default void criticalHit(Monster attacker) {}
+
+    /**
+     * A hit landed with the given type multiplier; category is one of the Type.effect_ constants.
+     */
+    default void effectiveness(Monster defender, double multiplier, int category) {}
+
+    default void hpChanged(Monster m) {}
+
+    default void recoil(Monster m, Monster enemy, double recoil) {}
+
+    default void statusInflicted(Monster m, int status) {}
+
+    default void moveFailed(Monster attacker, Move move) {}
+
+    /**
+     * A stat stage changed by the given number of stages, which is 0 if it was already at its limit.
+     */
+    default void stageChanged(Monster m, int stage, int change) {}
+
+    default void defrosted(Monster m) {}
+
+    /**
+     * A status condition was checked at the start of the monster's move; see the condition_ constants.
+     */
+    default void condition(Monster m, int condition) {}
+
+    default void conditionDamage(Monster m, int status) {}
+
+    default void fainted(Monster m) {}
+
+    default void xpGained(Monster m, int xp, boolean levelUp) {}
+
+    default void noMovesLeft(Monster m) {}
+}
@@ -0,0 +1,557 @@
+package jigglybot.battle;
+
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Binary record of a {@link Battle}, enough for {@link BattleReplay} to play it again from the seed.
+ *
+ * Layout: magic, format version, seed, channel id and start time, then tagged records. Moves are
+ * given by id and name once in a move record and referred to by key after that; the id tells apart
+ * moves that share a name, and the name still finds the move if {@link MoveList} was reordered. Monsters get an index the first time
+ * they are seen and a snapshot record with their full state; if a monster changed outside the battle
+ * rules between turns (a move learned, stages reset after running) it gets a new snapshot before the next turn.
+ * Each turn is followed by the HP, experience and status the battle rules left its monsters with, and
+ * captures and escape attempts store their result, so a replay can tell exactly where it stopped matching.
+ *
+ * Records are appended to the file as they happen, through one stream kept open until the battle ends.
+ * Only logs of finished battles are compressed into the archive directory by {@link #rotate()}; a log is
+ * never split, since a replay can only continue from the seed. Old archives are deleted.
+ */
+public class BattleLog
+{
+    private static final Logger logger = LoggerFactory.getLogger(BattleLog.class);
+
+    public static final int magic = 0x4A474C42; // "JGLB"
+    public static final int version = 1;
+
+    public static final String log_dir = "battles";
+    public static final String archive_dir = log_dir + "/archive";
+
+    /** Open logs untouched for this long have their file closed until the battle goes on */
+    public static final long release_after_ms = TimeUnit.HOURS.toMillis(1);
+    public static final long keep_archive_ms = TimeUnit.DAYS.toMillis(30);
+
+    public static final byte record_move = 1;
+    public static final byte record_monster = 2;
+    public static final byte record_switch = 3;
+    public static final byte record_turn = 4;
+    public static final byte record_capture = 5;
+    public static final byte record_run = 6;
+    public static final byte record_result = 7;
+
+    public static final short move_none = -1;
+    public static final short move_struggle = -2;
+
+    protected static ScheduledExecutorService rotator;
+
+    /** Logs of battles that haven't ended, by file. Guards creating log files, so rotation never takes one that is in use */
+    protected static final HashMap<File, BattleLog> open = new HashMap<>();
+
+    public final long seed;
+    public final long channel;
+    public final File file;
+
+    protected final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    protected final DataOutputStream out = new DataOutputStream(this.buffer);
+
+    protected final IdentityHashMap<Monster, Integer> monsters = new IdentityHashMap<>();
+    protected final ArrayList<Monster> byIndex = new ArrayList<>();
+    protected final ArrayList<byte[]> lastState = new ArrayList<>();
+
+    protected int[] turnMonsters = new int[0];
+
+    protected final int[] moveKeys = new int[MoveList.allMoves.size()];
+    protected int moveCount = 0;
+
+    protected boolean failed = false;
+    protected boolean closed = false;
+
+    /** Open while the battle runs, except after it sat idle for {@link #release_after_ms} */
+    protected FileOutputStream stream;
+    protected long lastWrite;
+
+    public BattleLog(long channel, long seed)
+    {
+        this.seed = seed;
+        this.channel = channel;
+        this.file = new File(log_dir + "/" + channel + "-" + Long.toHexString(seed) + ".log");
+
+        Arrays.fill(this.moveKeys, -1);
+    }
+
+    public void switched(int side, Monster m)
+    {
+        this.record(() ->
+        {
+            int index = this.sync(m);
+            this.out.writeByte(record_switch);
+            this.out.writeByte(side);
+            this.out.writeShort(index);
+        });
+    }
+
+    /**
+     * Records the monsters, participants and moves of a turn, before the turn is played.
+     */
+    public void turn(Monster m1, Move move1, List<Monster> participants1, Monster m2, Move move2, List<Monster> participants2)
+    {
+        this.record(() ->
+        {
+            int i1 = this.sync(m1);
+            int i2 = this.sync(m2);
+            int[] p1 = this.syncAll(participants1);
+            int[] p2 = this.syncAll(participants2);
+            int k1 = this.moveKey(move1);
+            int k2 = this.moveKey(move2);
+
+            this.out.writeByte(record_turn);
+            this.out.writeShort(i1);
+            this.out.writeShort(k1);
+            writeIndices(this.out, p1);
+            this.out.writeShort(i2);
+            this.out.writeShort(k2);
+            writeIndices(this.out, p2);
+
+            int[] all = Arrays.copyOf(p1, p1.length + p2.length + 2);
+            System.arraycopy(p2, 0, all, p1.length, p2.length);
+            all[all.length - 2] = i1;
+            all[all.length - 1] = i2;
+            this.turnMonsters = Arrays.stream(all).distinct().toArray();
+        });
+    }
+
+    /**
+     * Records the state the monsters of the last turn were left in.
+     */
+    public void turnEnded()
+    {
+        this.record(this::writeResults);
+    }
+
+    public void capture(Monster m, int ball, int result)
+    {
+        this.record(() ->
+        {
+            int index = this.sync(m);
+            this.out.writeByte(record_capture);
+            this.out.writeShort(index);
+            this.out.writeByte(ball);
+            this.out.writeByte(result);
+        });
+    }
+
+    public void run(Monster run, Monster other, int attempts, boolean escaped)
+    {
+        this.record(() ->
+        {
+            int i1 = this.sync(run);
+            int i2 = this.sync(other);
+            this.out.writeByte(record_run);
+            this.out.writeShort(i1);
+            this.out.writeShort(i2);
+            this.out.writeShort(attempts);
+            this.out.writeBoolean(escaped);
+        });
+    }
+
+    protected interface Writer
+    {
+        void write() throws IOException;
+    }
+
+    protected void record(Writer w)
+    {
+        if (this.failed || this.closed)
+            return;
+
+        try
+        {
+            w.write();
+            this.out.flush();
+            this.append();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // A broken log never gets to break the battle itself
+            this.failed = true;
+            logger.warn("Stopped logging battle {} after a write error", this.file, e);
+        }
+        finally
+        {
+            this.buffer.reset();
+        }
+    }
+
+    /**
+     * Writes the buffered record to the file. The record is already whole in memory, so it goes out in one write.
+     */
+    protected synchronized void append() throws IOException
+    {
+        if (this.stream == null)
+            this.open();
+
+        this.buffer.writeTo(this.stream);
+        this.lastWrite = System.currentTimeMillis();
+    }
+
+    protected void open() throws IOException
+    {
+        synchronized (open)
+        {
+            open.put(this.file, this);
+
+            boolean fresh = !this.file.exists();
+
+            if (fresh)
+                this.file.getParentFile().mkdirs();
+
+            this.stream = new FileOutputStream(this.file, true);
+
+            if (fresh)
+            {
+                ByteArrayOutputStream b = new ByteArrayOutputStream();
+                DataOutputStream header = new DataOutputStream(b);
+                header.writeInt(magic);
+                header.writeShort(version);
+                header.writeLong(this.seed);
+                header.writeLong(this.channel);
+                header.writeLong(System.currentTimeMillis());
+
+                b.writeTo(this.stream);
+            }
+        }
+    }
+
+    /**
+     * Closes the file of a battle that hasn't been written to for a while; it is opened again if the battle goes on.
+     */
+    protected synchronized void release(long now)
+    {
+        if (this.stream == null || now - this.lastWrite < release_after_ms)
+            return;
+
+        this.closeStream();
+    }
+
+    protected void closeStream()
+    {
+        try
+        {
+            this.stream.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to close battle log {}", this.file, e);
+        }
+
+        this.stream = null;
+    }
+
+    /**
+     * Called when the battle ends. Nothing more is recorded, and the log is left for {@link #rotate()} to archive.
+     */
+    public void close()
+    {
+        synchronized (this)
+        {
+            if (this.closed)
+                return;
+
+            this.closed = true;
+
+            if (this.stream != null)
+                this.closeStream();
+        }
+
+        synchronized (open)
+        {
+            open.remove(this.file, this);
+        }
+    }
+
+    /**
+     * Returns the index of the monster, first writing a snapshot if it is new or has changed since it was last seen.
+     */
+    protected int sync(Monster m) throws IOException
+    {
+        Integer index = this.monsters.get(m);
+
+        if (index == null)
+        {
+            index = this.monsters.size();
+            this.monsters.put(m, index);
+            this.byIndex.add(m);
+            this.lastState.add(null);
+        }
+
+        for (Move mo: m.moves)
+            this.moveKey(mo);
+
+        byte[] state = this.snapshot(m);
+
+        if (!Arrays.equals(state, this.lastState.get(index)))
+        {
+            this.out.writeByte(record_monster);
+            this.out.writeShort(index);
+            this.out.write(state);
+            this.lastState.set(index, state);
+        }
+
+        return index;
+    }
+
+    protected int[] syncAll(List<Monster> monsters) throws IOException
+    {
+        int[] indices = new int[monsters.size()];
+
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = this.sync(monsters.get(i));
+
+        return indices;
+    }
+
+    protected int moveKey(Move m) throws IOException
+    {
+        if (m == null || m == Move.none)
+            return move_none;
+        else if (m == Move.struggle)
+            return move_struggle;
+
+        if (this.moveKeys[m.id] < 0)
+        {
+            this.moveKeys[m.id] = this.moveCount++;
+            this.out.writeByte(record_move);
+            this.out.writeShort(this.moveKeys[m.id]);
+            this.out.writeShort(m.id);
+            this.out.writeUTF(m.name.toLowerCase());
+        }
+
+        return this.moveKeys[m.id];
+    }
+
+    /**
+     * Writes the results of the last turn, and remembers the state of its monsters so that only
+     * changes made outside the battle rules cause a new snapshot.
+     */
+    protected void writeResults() throws IOException
+    {
+        this.out.writeByte(record_result);
+        this.out.writeByte(this.turnMonsters.length);
+
+        for (int i: this.turnMonsters)
+        {
+            Monster m = this.byIndex.get(i);
+
+            this.out.writeShort(i);
+            this.out.writeShort(m.hp);
+            this.out.writeInt(m.xp);
+            this.out.writeByte(m.status);
+            this.lastState.set(i, this.snapshot(m));
+        }
+    }
+
+    protected byte[] snapshot(Monster m) throws IOException
+    {
+        ByteArrayOutputStream b = new ByteArrayOutputStream(128);
+        DataOutputStream o = new DataOutputStream(b);
+        writeMonster(o, m, this.moveKeys);
+        return b.toByteArray();
+    }
+
+    /**
+     * Writes a monster with {@link Monster#write} followed by everything only a battle cares about.
+     */
+    public static void writeMonster(DataOutput out, Monster m, int[] moveKeys) throws IOException
+    {
+        m.write(out, moveKeys);
+
+        out.writeLong(m.owner);
+        out.writeBoolean(m.isWild);
+        out.writeShort(m.catchRate);
+
+        for (int s: m.stages)
+            out.writeByte(s);
+
+        out.writeByte(m.sleepTurns);
+        out.writeByte(m.confuseTurns);
+        out.writeBoolean(m.flinched);
+    }
+
+    /**
+     * Reads a monster written by {@link #writeMonster} into m, or into a new monster if m is null.
+     */
+    public static Monster readMonster(DataInput in, Monster m, Move[] moveTable) throws IOException
+    {
+        if (m == null)
+            m = new Monster(in, moveTable);
+        else
+            m.read(in, moveTable);
+
+        m.owner = in.readLong();
+        m.isWild = in.readBoolean();
+        m.catchRate = in.readShort();
+
+        for (int i = 0; i < m.stages.length; i++)
+            m.stages[i] = in.readByte();
+
+        m.sleepTurns = in.readByte();
+        m.confuseTurns = in.readByte();
+        m.flinched = in.readBoolean();
+
+        return m;
+    }
+
+    protected static void writeIndices(DataOutput out, int[] indices) throws IOException
+    {
+        out.writeByte(indices.length);
+
+        for (int i: indices)
+            out.writeShort(i);
+    }
+
+    /**
+     * Rotates the logs now and then every hour.
+     */
+    public static synchronized void startRotationTask()
+    {
+        if (rotator != null)
+            return;
+
+        rotator = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "jigglybot-battle-logs");
+            t.setDaemon(true);
+            return t;
+        });
+
+        rotator.scheduleWithFixedDelay(() ->
+        {
+            try
+            {
+                rotate();
+            }
+            catch (Exception e)
+            {
+                logger.error("Failed to rotate battle logs", e);
+            }
+        }, 0, 1, TimeUnit.HOURS);
+    }
+
+    /**
+     * Compresses the logs of finished battles into the archive, closes the files of battles that have
+     * sat idle for {@link #release_after_ms}, and deletes archives older than {@link #keep_archive_ms}.
+     */
+    public static void rotate()
+    {
+        long now = System.currentTimeMillis();
+        ArrayList<BattleLog> running;
+        ArrayList<File> finished = new ArrayList<>();
+
+        // Moved into the archive directory before compressing, so a battle that starts meanwhile can't write to the file
+        synchronized (open)
+        {
+            running = new ArrayList<>(open.values());
+            File[] logs = new File(log_dir).listFiles((dir, name) -> name.endsWith(".log"));
+
+            if (logs != null)
+            {
+                for (File f: logs)
+                {
+                    if (open.containsKey(f))
+                        continue;
+
+                    File moved = archiveName(f.getName());
+                    moved.getParentFile().mkdirs();
+
+                    if (f.renameTo(moved))
+                        finished.add(moved);
+                    else
+                        logger.warn("Failed to move battle log {} to the archive", f);
+                }
+            }
+        }
+
+        for (BattleLog l: running)
+            l.release(now);
+
+        // Logs moved by a rotation that was stopped before compressing them are picked up here too
+        File[] moved = new File(archive_dir).listFiles((dir, name) -> name.endsWith(".log"));
+
+        if (moved != null)
+        {
+            for (File f: moved)
+            {
+                if (!finished.contains(f))
+                    finished.add(f);
+            }
+        }
+
+        for (File f: finished)
+        {
+            File archived = new File(f.getPath() + ".gz");
+
+            try (InputStream in = new FileInputStream(f); OutputStream out = new GZIPOutputStream(new FileOutputStream(archived)))
+            {
+                in.transferTo(out);
+            }
+            catch (IOException e)
+            {
+                logger.warn("Failed to archive battle log {}", f, e);
+                archived.delete();
+                continue;
+            }
+
+            if (!f.delete())
+                logger.warn("Failed to delete archived battle log {}", f);
+        }
+
+        File[] archives = new File(archive_dir).listFiles((dir, name) -> name.endsWith(".gz"));
+
+        if (archives != null)
+        {
+            for (File f: archives)
+            {
+                if (now - f.lastModified() >= keep_archive_ms && !f.delete())
+                    logger.warn("Failed to delete old battle log {}", f);
+            }
+        }
+    }
+
+    /**
+     * Returns a file in the archive for the named log that neither it nor its compressed copy is taken.
+     */
+    protected static File archiveName(String name)
+    {
+        String base = name.substring(0, name.length() - ".log".length());
+        File f = new File(archive_dir + "/" + name);
+
+        for (int i = 1; f.exists() || new File(f.getPath() + ".gz").exists(); i++)
+            f = new File(archive_dir + "/" + base + "-" + i + ".log");
+
+        return f;
+    }
+}
@@ -0,0 +1,139 @@
+package jigglybot.battle;
+
+import jigglybot.ChannelWrapper;
+import jigglybot.battle.action.Move;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Type;
+
+/**
+ * Queues the messages for battle events on a channel.
+ */
+public class BattleNarrator implements BattleEvents
+{
+    public final ChannelWrapper channel;
+
+    public BattleNarrator(ChannelWrapper channel)
+    {
+        this.channel = channel;
+    }
+
+    @Override
+    public void moveUsed(Monster attacker, Move move)
+    {
+        this.channel.queue(attacker.getName() + " used " + move.name + "!");
+    }
+
+    @Override
+    public void moveMissed(Monster attacker, Monster defender, Move move)
+    {
+        if (move.power > 0)
+            this.channel.queue(attacker.getName() + "'s attack missed!");
+        else if (move.isSpecial)
+            this.channel.queue("But, it failed!");
+        else
+            this.channel.queue("It didn't affect " + defender.getName() + "!");
+    }
+
+    @Override
+    public void criticalHit(Monster attacker)
+    {
+        this.channel.queue("Critical hit!");
+    }
+
+    @Override
+    public void effectiveness(Monster defender, double multiplier, int category)
+    {
+        if (category != Type.effect_normal)
+            this.channel.queue(Type.getCategoryMessage(category, defender.getName()));
+    }
+
+    @Override
+    public void hpChanged(Monster m)
+    {
+        this.channel.queue(m.getName() + "'s HP: " + m.hp + "/" + m.maxHp);
+    }
+
+    @Override
+    public void recoil(Monster m, Monster enemy, double recoil)
+    {
+        if (recoil > 0)
+            this.channel.queue(m.getName() + "'s hit with recoil!");
+        else if (recoil < 0)
+            this.channel.queue("Sucked health from " + enemy.getName() + "!");
+    }
+
+    @Override
+    public void statusInflicted(Monster m, int status)
+    {
+        this.channel.queue(m.getName() + Monster.getEffectMessage(status));
+    }
+
+    @Override
+    public void moveFailed(Monster attacker, Move move)
+    {
+        this.channel.queue("But, it failed!");
+    }
+
+    @Override
+    public void stageChanged(Monster m, int stage, int change)
+    {
+        this.channel.queue(Monster.getStageChangeMessage(m, stage, change));
+    }
+
+    @Override
+    public void defrosted(Monster m)
+    {
+        this.channel.queue("Fire defrosted " + m.getName() + "!");
+    }
+
+    @Override
+    public void condition(Monster m, int condition)
+    {
+        if (condition == condition_woke_up)
+            this.channel.queue(m.getName() + " woke up!");
+        else if (condition == condition_asleep)
+            this.channel.queue(m.getName() + " is fast asleep!");
+        else if (condition == condition_fully_paralyzed)
+            this.channel.queue(m.getName() + "'s fully paralyzed!");
+        else if (condition == condition_frozen)
+            this.channel.queue(m.getName() + " is frozen solid!");
+        else if (condition == condition_flinched)
+            this.channel.queue(m.getName() + " flinched!");
+        else if (condition == condition_confusion_ended)
+            this.channel.queue(m.getName() + "'s confused no more!");
+        else if (condition == condition_confused)
+            this.channel.queue(m.getName() + " is confused!");
+        else if (condition == condition_hurt_in_confusion)
+            this.channel.queue("It hurt itself in its confusion!");
+    }
+
+    @Override
+    public void conditionDamage(Monster m, int status)
+    {
+        if (status == Monster.burned)
+            this.channel.queue(m.getName() + "'s hurt by the burn!");
+        else
+            this.channel.queue(m.getName() + "'s hurt by poison!");
+    }
+
+    @Override
+    public void fainted(Monster m)
+    {
+        this.channel.queue(m.getName() + " fainted!");
+    }
+
+    @Override
+    public void xpGained(Monster m, int xp, boolean levelUp)
+    {
+        this.channel.queue(m.getName() + " gained " + xp + " EXP. Points!");
+
+        if (levelUp)
+            this.channel.queue(m.getName() + " grew to level " + m.level + "!");
+    }
+
+    @Override
+    public void noMovesLeft(Monster m)
+    {
+        this.channel.queue(m.getName() + " has no moves left!");
+    }
+}
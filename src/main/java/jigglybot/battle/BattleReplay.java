@@ -0,0 +1,233 @@
+package jigglybot.battle;
+
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.battle.action.Run;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Plays a {@link BattleLog} again through {@link BattleEngine} from its seed, and checks every turn,
+ * capture and escape attempt comes out the way it did in the original battle.
+ *
+ * Run with the log files (plain or archived .gz) as arguments; exits with 1 if any of them didn't match.
+ */
+public class BattleReplay
+{
+    public long seed;
+    public long channel;
+    public long startTime;
+
+    public int turns = 0;
+    public int checks = 0;
+
+    /** Set if the log ends in the middle of a record, e.g. when the bot stopped while writing it */
+    public boolean truncated = false;
+
+    /** Describes the first thing that didn't match, or null if everything did */
+    public String mismatch;
+
+    protected final ArrayList<Move> moves = new ArrayList<>();
+    protected final ArrayList<Monster> monsters = new ArrayList<>();
+    protected SplittableRandom random;
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: BattleReplay <battle log>...");
+            System.exit(2);
+        }
+
+        Species.setup();
+        MoveList.setup();
+
+        boolean failed = false;
+
+        for (String a: args)
+        {
+            BattleReplay r = replay(new File(a));
+
+            if (r.mismatch != null)
+            {
+                failed = true;
+                System.out.println("MISMATCH " + a + ": " + r.mismatch);
+            }
+            else
+                System.out.println("OK " + a + ": " + r.turns + " turns, " + r.checks + " checks" + (r.truncated ? " (truncated)" : ""));
+        }
+
+        if (failed)
+            System.exit(1);
+    }
+
+    public static BattleReplay replay(File f) throws IOException
+    {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(f)))
+        {
+            if (f.getName().endsWith(".gz"))
+                return replay(new DataInputStream(new GZIPInputStream(in)));
+            else
+                return replay(new DataInputStream(in));
+        }
+    }
+
+    public static BattleReplay replay(DataInputStream in) throws IOException
+    {
+        if (in.readInt() != BattleLog.magic)
+            throw new IOException("Not a battle log!");
+
+        int v = in.readUnsignedShort();
+
+        if (v > BattleLog.version)
+            throw new IOException("Battle log version " + v + " is newer than supported version " + BattleLog.version + "!");
+
+        BattleReplay r = new BattleReplay();
+        r.seed = in.readLong();
+        r.channel = in.readLong();
+        r.startTime = in.readLong();
+        r.random = new SplittableRandom(r.seed);
+
+        try
+        {
+            int record;
+
+            while (r.mismatch == null && (record = in.read()) >= 0)
+                r.play(record, in);
+        }
+        catch (EOFException e)
+        {
+            r.truncated = true;
+        }
+
+        return r;
+    }
+
+    protected void play(int record, DataInputStream in) throws IOException
+    {
+        if (record == BattleLog.record_move)
+        {
+            int key = in.readShort();
+            int id = in.readShort();
+            String name = in.readUTF();
+
+            Move m = MoveList.by_name.get(name);
+
+            if (id >= 0 && id < MoveList.allMoves.size() && MoveList.allMoves.get(id).name.equalsIgnoreCase(name))
+                m = MoveList.allMoves.get(id);
+
+            while (this.moves.size() <= key)
+                this.moves.add(null);
+
+            this.moves.set(key, m);
+        }
+        else if (record == BattleLog.record_monster)
+        {
+            int index = in.readShort();
+            Move[] moveTable = this.moves.toArray(new Move[0]);
+
+            if (index < this.monsters.size())
+                BattleLog.readMonster(in, this.monsters.get(index), moveTable);
+            else
+                this.monsters.add(BattleLog.readMonster(in, null, moveTable));
+        }
+        else if (record == BattleLog.record_switch)
+        {
+            in.readByte();
+            in.readShort();
+        }
+        else if (record == BattleLog.record_turn)
+        {
+            Monster m1 = this.monsters.get(in.readShort());
+            Move move1 = this.getMove(in.readShort());
+            ArrayList<Monster> p1 = this.readMonsters(in);
+            Monster m2 = this.monsters.get(in.readShort());
+            Move move2 = this.getMove(in.readShort());
+            ArrayList<Monster> p2 = this.readMonsters(in);
+
+            BattleEngine.resolve(m1, move1, p1, m2, move2, p2, BattleEngine.movesFirst(m1, move1, m2, move2, this.random), BattleEvents.silent, this.random);
+
+            m1.flinched = false;
+            m2.flinched = false;
+
+            this.turns++;
+        }
+        else if (record == BattleLog.record_result)
+        {
+            int count = in.readUnsignedByte();
+
+            for (int i = 0; i < count; i++)
+            {
+                int index = in.readShort();
+                int hp = in.readShort();
+                int xp = in.readInt();
+                int status = in.readUnsignedByte();
+
+                Monster m = this.monsters.get(index);
+
+                this.check("HP of " + m.name, hp, m.hp);
+                this.check("EXP of " + m.name, xp, m.xp);
+                this.check("status of " + m.name, status, m.status);
+            }
+        }
+        else if (record == BattleLog.record_capture)
+        {
+            Monster m = this.monsters.get(in.readShort());
+            int ball = in.readUnsignedByte();
+            int result = in.readByte();
+
+            this.check("capture of " + m.name, result, m.getCaptureResult(ball, this.random));
+        }
+        else if (record == BattleLog.record_run)
+        {
+            Monster run = this.monsters.get(in.readShort());
+            Monster other = this.monsters.get(in.readShort());
+            int attempts = in.readShort();
+            boolean escaped = in.readBoolean();
+
+            this.check("escape of " + run.name, escaped ? 1 : 0, Run.escapes(run, other, attempts, this.random) ? 1 : 0);
+        }
+        else
+            throw new IOException("Unknown battle log record " + record + "!");
+    }
+
+    protected void check(String what, int expected, int actual)
+    {
+        this.checks++;
+
+        if (this.mismatch == null && expected != actual)
+            this.mismatch = what + " after turn " + this.turns + " was " + actual + ", expected " + expected;
+    }
+
+    protected Move getMove(int key)
+    {
+        if (key == BattleLog.move_none)
+            return Move.none;
+        else if (key == BattleLog.move_struggle)
+            return Move.struggle;
+        else
+            return this.moves.get(key);
+    }
+
+    protected ArrayList<Monster> readMonsters(DataInputStream in) throws IOException
+    {
+        int count = in.readUnsignedByte();
+        ArrayList<Monster> list = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++)
+            list.add(this.monsters.get(in.readShort()));
+
+        return list;
+    }
+}
@@ -0,0 +1,261 @@
+package jigglybot.battle;
+
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+
+import java.util.SplittableRandom;
+
+/**
+ * Battle state of a fixed number of combatants kept in primitive arrays indexed by slot, for simulations
+ * that go through millions of monsters. New wild monsters are rolled straight into a slot with
+ * {@link #roll}, and {@link #store} copies a slot into an existing {@link Monster} for the battle rules,
+ * so the same few monster objects can be used for every battle instead of allocating new ones.
+ * {@link #load} copies a monster back into a slot.
+ *
+ * Moves are kept by id, IVs and EVs in the order HP, attack, defense, speed, special.
+ */
+public class BattleState
+{
+    public static final int stats = 5;
+    public static final int moves_per_slot = 4;
+    public static final int stages_per_slot = 6;
+
+    public final int slots;
+
+    public final Species[] species;
+    public final int[] level;
+    public final int[] xp;
+    public final int[] catchRate;
+    public final long[] owner;
+    public final long[] originalTrainer;
+    public final boolean[] wild;
+
+    public final int[] hp;
+    public final int[] maxHp;
+    public final int[] attack;
+    public final int[] defense;
+    public final int[] speed;
+    public final int[] special;
+
+    public final byte[] ivs;
+    public final int[] evs;
+
+    public final byte[] status;
+    public final byte[] sleepTurns;
+    public final byte[] confuseTurns;
+    public final boolean[] flinched;
+    public final byte[] stages;
+
+    public final short[] moves;
+    public final byte[] pp;
+
+    public BattleState(int slots)
+    {
+        this.slots = slots;
+
+        this.species = new Species[slots];
+        this.level = new int[slots];
+        this.xp = new int[slots];
+        this.catchRate = new int[slots];
+        this.owner = new long[slots];
+        this.originalTrainer = new long[slots];
+        this.wild = new boolean[slots];
+
+        this.hp = new int[slots];
+        this.maxHp = new int[slots];
+        this.attack = new int[slots];
+        this.defense = new int[slots];
+        this.speed = new int[slots];
+        this.special = new int[slots];
+
+        this.ivs = new byte[slots * stats];
+        this.evs = new int[slots * stats];
+
+        this.status = new byte[slots];
+        this.sleepTurns = new byte[slots];
+        this.confuseTurns = new byte[slots];
+        this.flinched = new boolean[slots];
+        this.stages = new byte[slots * stages_per_slot];
+
+        this.moves = new short[slots * moves_per_slot];
+        this.pp = new byte[slots * moves_per_slot];
+    }
+
+    /**
+     * Puts a new wild monster in the slot, rolling the same numbers in the same order as
+     * {@link Monster#Monster(Species, int, SplittableRandom)}.
+     */
+    public void roll(int slot, Species s, int level, SplittableRandom random)
+    {
+        int i = slot * stats;
+
+        byte attackIv = (byte) random.nextInt(16);
+        byte defenseIv = (byte) random.nextInt(16);
+        byte speedIv = (byte) random.nextInt(16);
+        byte specialIv = (byte) random.nextInt(16);
+
+        this.ivs[i] = (byte) ((attackIv % 2) * 8 + (defenseIv % 2) * 4 + (speedIv % 2) * 2 + (specialIv % 2));
+        this.ivs[i + 1] = attackIv;
+        this.ivs[i + 2] = defenseIv;
+        this.ivs[i + 3] = speedIv;
+        this.ivs[i + 4] = specialIv;
+
+        for (int j = 0; j < stats; j++)
+            this.evs[i + j] = 0;
+
+        this.species[slot] = s;
+        this.level[slot] = level;
+        this.xp[slot] = Monster.getLevelXP(s.xpGain, level);
+        this.catchRate[slot] = s.catchRate;
+        this.owner[slot] = 0;
+        this.originalTrainer[slot] = 0;
+        this.wild[slot] = true;
+
+        this.recalculateStats(slot);
+        this.hp[slot] = this.maxHp[slot];
+
+        this.status[slot] = 0;
+        this.sleepTurns[slot] = 0;
+        this.confuseTurns[slot] = 0;
+        this.flinched[slot] = false;
+
+        for (int j = 0; j < stages_per_slot; j++)
+            this.stages[slot * stages_per_slot + j] = 0;
+
+        int m = slot * moves_per_slot;
+
+        for (int j = 0; j < moves_per_slot; j++)
+        {
+            if (j < 3)
+            {
+                Move move = MoveList.allMoves.get(random.nextInt(MoveList.allMoves.size()));
+                this.moves[m + j] = (short) move.id;
+                this.pp[m + j] = (byte) move.maxPP;
+            }
+            else
+            {
+                this.moves[m + j] = -1;
+                this.pp[m + j] = 0;
+            }
+        }
+    }
+
+    public void recalculateStats(int slot)
+    {
+        Species s = this.species[slot];
+        int i = slot * stats;
+        int l = this.level[slot];
+
+        this.maxHp[slot] = Monster.calculateHp(s.baseHP, this.ivs[i], this.evs[i], l);
+        this.attack[slot] = Monster.calculateStat(s.baseAttack, this.ivs[i + 1], this.evs[i + 1], l);
+        this.defense[slot] = Monster.calculateStat(s.baseDefense, this.ivs[i + 2], this.evs[i + 2], l);
+        this.speed[slot] = Monster.calculateStat(s.baseSpeed, this.ivs[i + 3], this.evs[i + 3], l);
+        this.special[slot] = Monster.calculateStat(s.baseSpecial, this.ivs[i + 4], this.evs[i + 4], l);
+    }
+
+    /**
+     * Copies a monster into the slot.
+     */
+    public void load(int slot, Monster m)
+    {
+        int i = slot * stats;
+
+        this.species[slot] = m.species;
+        this.level[slot] = m.level;
+        this.xp[slot] = m.xp;
+        this.catchRate[slot] = m.catchRate;
+        this.owner[slot] = m.owner;
+        this.originalTrainer[slot] = m.originalTrainer;
+        this.wild[slot] = m.isWild;
+
+        this.hp[slot] = m.hp;
+        this.maxHp[slot] = m.maxHp;
+        this.attack[slot] = m.attack;
+        this.defense[slot] = m.defense;
+        this.speed[slot] = m.speed;
+        this.special[slot] = m.special;
+
+        this.ivs[i] = (byte) m.hpIv;
+        this.ivs[i + 1] = (byte) m.attackIv;
+        this.ivs[i + 2] = (byte) m.defenseIv;
+        this.ivs[i + 3] = (byte) m.speedIv;
+        this.ivs[i + 4] = (byte) m.specialIv;
+
+        this.evs[i] = m.hpEv;
+        this.evs[i + 1] = m.attackEv;
+        this.evs[i + 2] = m.defenseEv;
+        this.evs[i + 3] = m.speedEv;
+        this.evs[i + 4] = m.specialEv;
+
+        this.status[slot] = (byte) m.status;
+        this.sleepTurns[slot] = (byte) m.sleepTurns;
+        this.confuseTurns[slot] = (byte) m.confuseTurns;
+        this.flinched[slot] = m.flinched;
+
+        for (int j = 0; j < stages_per_slot; j++)
+            this.stages[slot * stages_per_slot + j] = (byte) m.stages[j];
+
+        for (int j = 0; j < moves_per_slot; j++)
+        {
+            Move move = m.moves[j];
+            this.moves[slot * moves_per_slot + j] = (short) (move == null ? -1 : move.id);
+            this.pp[slot * moves_per_slot + j] = (byte) m.movePP[j];
+        }
+    }
+
+    /**
+     * Copies the slot into an existing monster, overwriting everything the battle rules use.
+     * The name is only replaced when the species changes.
+     */
+    public void store(int slot, Monster m)
+    {
+        int i = slot * stats;
+
+        if (m.species != this.species[slot] || m.name == null)
+            m.name = this.species[slot].name.toUpperCase();
+
+        m.species = this.species[slot];
+        m.level = this.level[slot];
+        m.xp = this.xp[slot];
+        m.catchRate = this.catchRate[slot];
+        m.owner = this.owner[slot];
+        m.originalTrainer = this.originalTrainer[slot];
+        m.isWild = this.wild[slot];
+
+        m.hp = this.hp[slot];
+        m.maxHp = this.maxHp[slot];
+        m.attack = this.attack[slot];
+        m.defense = this.defense[slot];
+        m.speed = this.speed[slot];
+        m.special = this.special[slot];
+
+        m.hpIv = this.ivs[i];
+        m.attackIv = this.ivs[i + 1];
+        m.defenseIv = this.ivs[i + 2];
+        m.speedIv = this.ivs[i + 3];
+        m.specialIv = this.ivs[i + 4];
+
+        m.hpEv = this.evs[i];
+        m.attackEv = this.evs[i + 1];
+        m.defenseEv = this.evs[i + 2];
+        m.speedEv = this.evs[i + 3];
+        m.specialEv = this.evs[i + 4];
+
+        m.status = this.status[slot];
+        m.sleepTurns = this.sleepTurns[slot];
+        m.confuseTurns = this.confuseTurns[slot];
+        m.flinched = this.flinched[slot];
+
+        for (int j = 0; j < stages_per_slot; j++)
+            m.stages[j] = this.stages[slot * stages_per_slot + j];
+
+        for (int j = 0; j < moves_per_slot; j++)
+        {
+            int id = this.moves[slot * moves_per_slot + j];
+            m.moves[j] = id < 0 ? null : MoveList.allMoves.get(id);
+            m.movePP[j] = this.pp[slot * moves_per_slot + j];
+        }
+    }
+}
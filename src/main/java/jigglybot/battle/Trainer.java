@@ -3,11 +3,13 @@ package jigglybot.battle;
 import discord4j.core.spec.Spec;
 import jigglybot.ChannelWrapper;
 import jigglybot.ICanBattle;
+import jigglybot.Rng;
 import jigglybot.battle.action.Move;
 import jigglybot.monster.Monster;
 import jigglybot.monster.Species;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 public class Trainer implements ICanBattle
 {
@@ -18,11 +20,16 @@ public class Trainer implements ICanBattle
 
     public Trainer()
     {
-        int numMons = (int) (Math.random() * 6 + 1);
+        this(Rng.get());
+    }
+
+    public Trainer(SplittableRandom random)
+    {
+        int numMons = random.nextInt(1, 7);
 
         for (int i = 0; i < numMons; i++)
         {
-            Monster m = new Monster(Species.by_num.get((int) (Math.random() * Species.by_num.keySet().size())), (int) (Math.random() * 15 + 5));
+            Monster m = new Monster(Species.by_num.get(random.nextInt(Species.by_num.keySet().size())), random.nextInt(5, 20), random);
             m.isWild = false;
             this.monsters[i] = m;
         }
@@ -54,7 +61,7 @@ public class Trainer implements ICanBattle
         }
 
         if (validMoves.size() > 0)
-            cw.currentBattle.actionDecided(validMoves.get((int) (Math.random() * validMoves.size())));
+            cw.currentBattle.actionDecided(validMoves.get(Rng.get().nextInt(validMoves.size())));
         else
         {
             cw.queue(m.getName() + " has no moves left!");
@@ -1,15 +1,16 @@
 package jigglybot.battle.action;
 
-import jigglybot.ChannelWrapper;
 import jigglybot.QuadConsumer;
-import jigglybot.TriConsumer;
+import jigglybot.battle.BattleEvents;
 import jigglybot.monster.Monster;
 import jigglybot.monster.Type;
 
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 public class Move implements IAction
 {
+    public final int id;
     public final String name;
     public final int type;
     public final int power;
@@ -38,17 +39,20 @@ public class Move implements IAction
     public static final Move none = new Move("none", -1, 0, 0, 0);
     public static final Move struggle = new Move("struggle", Type.normal, -1, 50, 100);
 
-    public TriConsumer<Monster, Monster, ChannelWrapper> damageBehavior;
-    public QuadConsumer<Monster, Monster, Integer, ChannelWrapper> postDamageBehavior;
-    public TriConsumer<Monster, Monster, ChannelWrapper> effectBehavior;
+    public QuadConsumer<Monster, Monster, BattleEvents, SplittableRandom> damageBehavior;
+    public QuadConsumer<Monster, Monster, Integer, BattleEvents> postDamageBehavior;
+    public QuadConsumer<Monster, Monster, BattleEvents, SplittableRandom> effectBehavior;
 
     public Move(String name, int type, int maxPP, int power, int accuracy)
     {
         if (maxPP > 0)
         {
+            this.id = MoveList.allMoves.size();
             MoveList.by_name.put(name, this);
             MoveList.allMoves.add(this);
         }
+        else
+            this.id = -1;
 
         this.name = name.toUpperCase();
         this.type = type;
@@ -59,12 +63,12 @@ public class Move implements IAction
         this.isSpecial = (type == Type.water || type == Type.grass || type == Type.fire || type == Type.ice ||
                 type == Type.electric || type == Type.psychic || type == Type.dragon);
 
-        this.damageBehavior = (attacker, defender, cw) ->
+        this.damageBehavior = (attacker, defender, events, random) ->
         {
             if (this.power == 0)
                 return;
 
-            double mod = (int)(Math.random() * 39 + 217) / 255.0;
+            double mod = random.nextInt(217, 256) / 255.0;
 
             if (this.type == attacker.species.type1 || this.type == attacker.species.type2)
                 mod *= 1.5;
@@ -72,33 +76,32 @@ public class Move implements IAction
             boolean crit = false;
 
             int t = (int) (attacker.species.baseSpeed / 2 * critMultiplier);
-            if (t > (int)(Math.random() * 256))
+            if (t > random.nextInt(256))
                 crit = true;
 
-            mod *= Type.getEffectiveness(this.type, defender.species.type1, defender.species.type2);
+            double effectiveness = Type.getEffectiveness(this.type, defender.species);
+            mod *= effectiveness;
 
             if (crit)
-                cw.queue("Critical hit!");
+                events.criticalHit(attacker);
 
-            cw.queue(Type.getEffectiveMessage(this.type, defender.species.type1, defender.species.type2, defender.getName()));
+            events.effectiveness(defender, effectiveness, Type.getEffectiveCategory(this.type, defender.species));
 
             defender.hp -= Monster.getDamage(attacker, defender, this.power, this.isSpecial, crit, mod);
 
             if (defender.hp < 0)
                 defender.hp = 0;
 
-            cw.queue(defender.getName() + "'s HP: " + defender.hp + "/" + defender.maxHp);
+            events.hpChanged(defender);
 
-            if (Math.random() < this.flinchChance)
+            if (random.nextDouble() < this.flinchChance)
                 defender.flinched = true;
         };
 
-        this.postDamageBehavior = (monster, enemy, damage, cw) ->
+        this.postDamageBehavior = (monster, enemy, damage, events) ->
         {
-            if (recoil > 0)
-                cw.queue(monster.getName() + "'s hit with recoil!");
-            else if (recoil < 0)
-                cw.queue("Sucked health from " + enemy.getName() + "!");
+            if (recoil != 0)
+                events.recoil(monster, enemy, recoil);
 
             monster.hp -= damage * this.recoil;
 
@@ -108,12 +111,12 @@ public class Move implements IAction
             monster.hp = Math.min(monster.maxHp, Math.max(0, monster.hp));
 
             if (recoil != 0)
-                cw.queue(monster.getName() + "'s HP: " + monster.hp + "/" + monster.maxHp);
+                events.hpChanged(monster);
         };
 
-        this.effectBehavior = (monster, enemy, cw) ->
+        this.effectBehavior = (monster, enemy, events, random) ->
         {
-            if (this.effectChance > Math.random())
+            if (this.effectChance > random.nextDouble())
             {
                 Monster m = enemy;
 
@@ -132,31 +135,31 @@ public class Move implements IAction
                         if (this.statusEffect != Monster.confused)
                             m.status = this.statusEffect;
 
-                        cw.queue(m.getName() + Monster.getEffectMessage(this.statusEffect));
+                        events.statusInflicted(m, this.statusEffect);
 
                         if (this.statusEffect == Monster.asleep)
-                            m.sleepTurns = (int) (Math.random() * 7 + 1);
+                            m.sleepTurns = random.nextInt(1, 8);
 
                         if (this.statusEffect == Monster.confused)
-                            m.confuseTurns = (int) (Math.random() * 4 + 3);
+                            m.confuseTurns = random.nextInt(3, 7);
                     }
                     else if (this.power == 0)
-                        cw.queue("But, it failed!");
+                        events.moveFailed(monster, this);
                 }
 
                 if (this.stage >= 0)
-                    cw.queue(m.modifyStage(this.stage, this.stageAmount));
+                    events.stageChanged(m, this.stage, m.modifyStage(this.stage, this.stageAmount));
             }
 
             if (enemy.status == Monster.frozen && this.type == Type.fire)
             {
                 enemy.status = 0;
-                cw.queue("Fire defrosted " + enemy.getName() + "!");
+                events.defrosted(enemy);
             }
         };
     }
 
-    public void execute(Monster attacker, Monster defender, ChannelWrapper cw, ArrayList<Monster> participants)
+    public void execute(Monster attacker, Monster defender, BattleEvents events, SplittableRandom random, ArrayList<Monster> participants)
     {
         for (int i = 0; i < attacker.moves.length; i++)
         {
@@ -167,29 +170,24 @@ public class Move implements IAction
         if (this == Move.none)
             return;
 
-        cw.queue(attacker.getName() + " used " + this.name + "!");
+        events.moveUsed(attacker, this);
 
         int a = (int) (accuracy * attacker.getStageMultiplier(Monster.stage_accuracy) * defender.getStageMultiplier(Monster.stage_evasion));
-        int r = (int) (Math.random() * 100);
+        int r = random.nextInt(100);
 
         if (r < a || this.accuracy < 0)
         {
             int hp = defender.hp;
 
-            this.damageBehavior.accept(attacker, defender, cw);
-            this.postDamageBehavior.accept(attacker, defender, hp - defender.hp, cw);
+            this.damageBehavior.accept(attacker, defender, events, random);
+            this.postDamageBehavior.accept(attacker, defender, hp - defender.hp, events);
 
             if ((this.effectTargetsEnemy && defender.hp > 0) || (!this.effectTargetsEnemy && attacker.hp > 0))
-                this.effectBehavior.accept(attacker, defender, cw);
+                this.effectBehavior.accept(attacker, defender, events, random);
 
             return;
         }
 
-        if (this.power > 0)
-            cw.queue(attacker.getName() + "'s attack missed!");
-        else if (isSpecial)
-            cw.queue("But, it failed!");
-        else
-            cw.queue("It didn't affect " + defender.getName() + "!");
+        events.moveMissed(attacker, defender, this);
     }
 }
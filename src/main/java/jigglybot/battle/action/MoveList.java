@@ -218,7 +218,7 @@ public class MoveList
         iceBeam.effectChance = 0.1;
         iceBeam.statusEffect = Monster.frozen;
 
-        Move icePunch = new Move("ice beam", Type.ice, 15, 75, 100);
+        Move icePunch = new Move("ice punch", Type.ice, 15, 75, 100);
         icePunch.effectChance = 0.1;
         icePunch.statusEffect = Monster.frozen;
 
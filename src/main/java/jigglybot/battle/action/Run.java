@@ -4,12 +4,16 @@ import jigglybot.ChannelWrapper;
 import jigglybot.battle.Battle;
 import jigglybot.monster.Monster;
 
+import java.util.SplittableRandom;
+
 public class Run implements IAction
 {
     public void execute(Battle b, Monster run, Monster other, ChannelWrapper cw, int attempts)
     {
-        if ((int)(Math.random() * 256) < (run.speed * run.getStageMultiplier(Monster.stage_speed)) * 32 /
-                (other.speed * other.getStageMultiplier(Monster.stage_speed) * other.speed) + 30 * attempts)
+        boolean escaped = escapes(run, other, attempts, b.random);
+        b.log.run(run, other, attempts, escaped);
+
+        if (escaped)
         {
             cw.queue("Got away safely!");
             cw.queue("Whose POKéMON will JOIN next?");
@@ -24,4 +28,10 @@ public class Run implements IAction
         else
             cw.queue("Can't escape!");
     }
+
+    public static boolean escapes(Monster run, Monster other, int attempts, SplittableRandom random)
+    {
+        return random.nextInt(256) < (run.speed * run.getStageMultiplier(Monster.stage_speed)) * 32 /
+                (other.speed * other.getStageMultiplier(Monster.stage_speed) * other.speed) + 30 * attempts;
+    }
 }
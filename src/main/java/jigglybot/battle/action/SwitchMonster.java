@@ -2,6 +2,7 @@ package jigglybot.battle.action;
 
 import jigglybot.battle.Battle;
 import jigglybot.monster.Monster;
+import jigglybot.monster.Sprites;
 
 public class SwitchMonster implements IAction
 {
@@ -23,17 +24,16 @@ public class SwitchMonster implements IAction
         else
             b.channel.queue(prev.getName() + " enough! Come back!");
 
-        String img = ("*" + "/back/" + monster.species.name.toUpperCase())
-                .replace("♂", "m").replace("♀", "f").replace("'", "").toLowerCase() + "b.png*";
+        byte[] img = Sprites.getBack(monster.species);
 
         if (frac >= 0.7)
-            b.channel.queue(img + "Go! " + monster.getName() + "!");
+            b.channel.queue(img, "Go! " + monster.getName() + "!");
         else if (frac >= 0.4)
-            b.channel.queue(img + "Do it! " + monster.getName() + "!");
+            b.channel.queue(img, "Do it! " + monster.getName() + "!");
         else if (frac >= 0.1)
-            b.channel.queue(img + "Get'm! " + monster.getName() + "!");
+            b.channel.queue(img, "Get'm! " + monster.getName() + "!");
         else
-            b.channel.queue(img + "The enemy's weak! Get'm! " + monster.getName() + "!");
+            b.channel.queue(img, "The enemy's weak! Get'm! " + monster.getName() + "!");
 
         return this.monster;
     }
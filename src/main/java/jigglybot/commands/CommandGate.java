@@ -0,0 +1,128 @@
+package jigglybot.commands;
+
+import jigglybot.ChannelWrapper;
+import jigglybot.outbound.OutboundScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Admission control for slash commands. A command is only taken if fewer than {@link #max_in_flight}
+ * commands are waiting or running overall and fewer than {@link #max_per_channel} in its channel;
+ * otherwise it gets the busy reply straight away instead of waiting in a queue past Discord's
+ * three second reply deadline.
+ *
+ * Admitted commands run on their channel's mailbox, which keeps one channel's commands in order, on the
+ * {@link #workers} pool, which runs different channels in parallel across the cores.
+ */
+public class CommandGate
+{
+    private static final Logger logger = LoggerFactory.getLogger(CommandGate.class);
+
+    public static final int max_in_flight = 128;
+    public static final int max_per_channel = 10;
+
+    public static final String busy_message = "⏳ **JigglyBot is busy right now!** Please try that again in a moment.";
+
+    /** Runs channel mailboxes; a few threads per core, since commands may wait on a user's lock or save file */
+    public static final Scheduler workers = Schedulers.newBoundedElastic(Runtime.getRuntime().availableProcessors() * 4, 100000, "jigglybot-commands", 60, true);
+
+    public static final AtomicInteger inFlight = new AtomicInteger();
+
+    public static final AtomicLong admitted = new AtomicLong();
+    public static final AtomicLong rejected = new AtomicLong();
+    public static final AtomicLong runs = new AtomicLong();
+    public static final AtomicLong totalQueueNanos = new AtomicLong();
+    public static final LongAccumulator maxQueueNanos = new LongAccumulator(Math::max, 0);
+
+    protected static ScheduledExecutorService reporter;
+
+    /**
+     * Takes a place for a command in the channel, or returns false if the bot or the channel is full.
+     * Every true return must be followed by {@link #exit} once the command is done.
+     */
+    public static boolean tryEnter(ChannelWrapper channel)
+    {
+        if (inFlight.incrementAndGet() > max_in_flight)
+        {
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        if (channel.commands.incrementAndGet() > max_per_channel)
+        {
+            channel.commands.decrementAndGet();
+            inFlight.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        admitted.incrementAndGet();
+        return true;
+    }
+
+    public static void exit(ChannelWrapper channel)
+    {
+        channel.commands.decrementAndGet();
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Records how long a command waited between arriving and starting to run.
+     */
+    public static void started(long receivedAt)
+    {
+        long waited = System.nanoTime() - receivedAt;
+
+        runs.incrementAndGet();
+        totalQueueNanos.addAndGet(waited);
+        maxQueueNanos.accumulate(waited);
+    }
+
+    /**
+     * Describes the commands since the last call, and starts counting again.
+     */
+    public static String getStats()
+    {
+        long n = runs.getAndSet(0);
+        long total = totalQueueNanos.getAndSet(0);
+        long max = maxQueueNanos.getThenReset();
+
+        return "inFlight=" + inFlight.get() + " admitted=" + admitted.getAndSet(0) + " rejected=" + rejected.getAndSet(0)
+                + " avgQueueMs=" + (n == 0 ? 0 : total / n / 1000000)
+                + " maxQueueMs=" + max / 1000000;
+    }
+
+    /**
+     * Logs the command, command latency and outbound request stats once a minute. Command stats cover
+     * the last minute only, so a slow spell doesn't hide in the average or stick in the maximum.
+     */
+    public static synchronized void startStatsTask()
+    {
+        if (reporter != null)
+            return;
+
+        reporter = Executors.newSingleThreadScheduledExecutor(r ->
+        {
+            Thread t = new Thread(r, "jigglybot-stats");
+            t.setDaemon(true);
+            return t;
+        });
+
+        reporter.scheduleWithFixedDelay(() ->
+        {
+            logger.info("Commands (last minute): {}", getStats());
+            logger.info("Command latency: {}", Response.getStats());
+            logger.info("Outbound: {}", OutboundScheduler.getStats());
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+}
@@ -0,0 +1,221 @@
+package jigglybot.commands;
+
+import discord4j.discordjson.json.ApplicationCommandData;
+import discord4j.discordjson.json.ApplicationCommandOptionChoiceData;
+import discord4j.discordjson.json.ApplicationCommandOptionData;
+import discord4j.discordjson.json.ApplicationCommandRequest;
+import discord4j.discordjson.possible.Possible;
+import discord4j.rest.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Registers the bot's global slash commands. The commands already registered are fetched and compared
+ * with ours, and if anything differs the whole set is replaced with one bulk overwrite, so a failed
+ * startup never leaves half of the commands registered.
+ *
+ * A hash of the last set registered is kept in {@link #hash_file}; if the commands haven't changed since,
+ * nothing is sent to Discord at all.
+ */
+public class CommandRegistrar
+{
+    private static final Logger logger = LoggerFactory.getLogger(CommandRegistrar.class);
+
+    public static final String hash_file = "commands.sha256";
+
+    protected final RestClient restClient;
+
+    /** The bot's user id, so a hash saved for another bot isn't trusted */
+    protected final long botId;
+
+    public CommandRegistrar(RestClient restClient, long botId)
+    {
+        this.restClient = restClient;
+        this.botId = botId;
+    }
+
+    public Mono<Void> register(List<ApplicationCommandRequest> commands)
+    {
+        String hash = this.botId + " " + hash(commands);
+
+        if (hash.equals(readHash()))
+        {
+            logger.info("Slash commands are unchanged, skipping registration");
+            return Mono.empty();
+        }
+
+        return this.restClient.getApplicationId().flatMap(applicationId ->
+                this.restClient.getApplicationService().getGlobalApplicationCommands(applicationId)
+                        .collectList()
+                        .flatMap(existing ->
+                        {
+                            List<String> changes = diff(commands, existing);
+
+                            if (changes.isEmpty())
+                            {
+                                logger.info("Slash commands are already up to date");
+                                return Mono.empty();
+                            }
+
+                            logger.info("Updating slash commands: {}", String.join(", ", changes));
+
+                            return this.restClient.getApplicationService()
+                                    .bulkOverwriteGlobalApplicationCommand(applicationId, commands)
+                                    .count()
+                                    .doOnNext(n -> logger.info("Registered {} slash commands", n))
+                                    .then();
+                        }))
+                .then(Mono.fromRunnable(() -> writeHash(hash)))
+                .then()
+                .onErrorResume(e ->
+                {
+                    // Handled here only; the bot keeps running with whatever commands are registered
+                    logger.error("Failed to register slash commands", e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Describes each command that has to be added, changed or removed to get from the existing set to ours.
+     */
+    public static List<String> diff(List<ApplicationCommandRequest> commands, List<ApplicationCommandData> existing)
+    {
+        HashMap<String, ApplicationCommandData> registered = new HashMap<>();
+
+        for (ApplicationCommandData d: existing)
+            registered.put(d.name(), d);
+
+        ArrayList<String> changes = new ArrayList<>();
+
+        for (ApplicationCommandRequest c: commands)
+        {
+            ApplicationCommandData d = registered.remove(c.name());
+
+            if (d == null)
+                changes.add("+" + c.name());
+            else if (!d.description().equals(c.description().toOptional().orElse(""))
+                    || !sameOptions(c.options(), d.options())
+                    || type(c.type()) != type(d.type()))
+                changes.add("~" + c.name());
+        }
+
+        for (String name: registered.keySet())
+            changes.add("-" + name);
+
+        return changes;
+    }
+
+    /**
+     * Compares options the way Discord stores them: a missing list is empty and a missing flag is false.
+     */
+    protected static boolean sameOptions(Possible<List<ApplicationCommandOptionData>> a, Possible<List<ApplicationCommandOptionData>> b)
+    {
+        List<ApplicationCommandOptionData> l1 = a.toOptional().orElse(Collections.emptyList());
+        List<ApplicationCommandOptionData> l2 = b.toOptional().orElse(Collections.emptyList());
+
+        if (l1.size() != l2.size())
+            return false;
+
+        for (int i = 0; i < l1.size(); i++)
+        {
+            ApplicationCommandOptionData o1 = l1.get(i);
+            ApplicationCommandOptionData o2 = l2.get(i);
+
+            if (o1.type() != o2.type() || !o1.name().equals(o2.name()) || !o1.description().equals(o2.description()))
+                return false;
+
+            if (o1.required().toOptional().orElse(false) != o2.required().toOptional().orElse(false))
+                return false;
+
+            if (!sameChoices(o1.choices(), o2.choices()) || !sameOptions(o1.options(), o2.options()))
+                return false;
+        }
+
+        return true;
+    }
+
+    protected static boolean sameChoices(Possible<List<ApplicationCommandOptionChoiceData>> a, Possible<List<ApplicationCommandOptionChoiceData>> b)
+    {
+        List<ApplicationCommandOptionChoiceData> l1 = a.toOptional().orElse(Collections.emptyList());
+        List<ApplicationCommandOptionChoiceData> l2 = b.toOptional().orElse(Collections.emptyList());
+
+        if (l1.size() != l2.size())
+            return false;
+
+        for (int i = 0; i < l1.size(); i++)
+        {
+            // Values come back from Discord as whatever JSON type they were sent as
+            if (!l1.get(i).name().equals(l2.get(i).name()) || !Objects.equals(String.valueOf(l1.get(i).value()), String.valueOf(l2.get(i).value())))
+                return false;
+        }
+
+        return true;
+    }
+
+    /** Chat input commands are type 1, which is also what Discord assumes when none is given */
+    protected static int type(Possible<Integer> type)
+    {
+        return type.toOptional().orElse(1);
+    }
+
+    public static String hash(List<ApplicationCommandRequest> commands)
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder s = new StringBuilder();
+
+            for (byte b: digest.digest(commands.toString().getBytes(StandardCharsets.UTF_8)))
+                s.append(String.format("%02x", b));
+
+            return s.toString();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected static String readHash()
+    {
+        File f = new File(hash_file);
+
+        if (!f.exists())
+            return null;
+
+        try
+        {
+            return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8).trim();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to read {}", hash_file, e);
+            return null;
+        }
+    }
+
+    protected static void writeHash(String hash)
+    {
+        try
+        {
+            Files.write(new File(hash_file).toPath(), (hash + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException e)
+        {
+            logger.warn("Failed to write {}", hash_file, e);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package jigglybot.commands;
+
+import discord4j.core.event.domain.interaction.DeferrableInteractionEvent;
+import discord4j.core.object.component.LayoutComponent;
+import discord4j.core.spec.EmbedCreateSpec;
+import discord4j.core.spec.InteractionApplicationCommandCallbackReplyMono;
+import discord4j.core.spec.InteractionFollowupCreateMono;
+import discord4j.core.spec.InteractionReplyEditMono;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Keeps a slash command inside Discord's three second reply deadline. Every command has a latency budget,
+ * counted from when the interaction arrived; if its reply isn't on its way by then, the interaction is
+ * deferred, and the reply is sent later as an edit of the deferred response instead.
+ *
+ * Commands known to take a while have a budget of 0 and are deferred publicly straight away. Deferring at
+ * the end of a budget is ephemeral, so only the user sees it; a reply that should be public then replaces
+ * it with a follow-up.
+ *
+ * Handlers build their replies with event.reply() as usual and pass them through {@link #send}. A command
+ * with no reply after {@link #timeout_ms} is answered with {@link #timeout_message} or {@link #still_running_message} instead.
+ */
+public class Response
+{
+    public static final long default_budget_ms = 1500;
+
+    /** How long a command may wait and run before its reply is given up on */
+    public static final long timeout_ms = 10000;
+
+    /** For a command given up on before it ran, so trying again is safe */
+    public static final String timeout_message = "⌛ **That took too long!** Please try again in a moment.";
+
+    /** For a command that had already started when its time ran out; it will still take effect, just without a reply */
+    public static final String still_running_message = "⌛ **That's taking a while!** It will still go through, so there's no need to try again.";
+
+    /** Budgets for commands that differ from the default */
+    public static final HashMap<String, Long> budgets = new HashMap<>();
+
+    protected static final int state_open = 0;
+    protected static final int state_replied = 1;
+    protected static final int state_deferred = 2;
+
+    protected static final ConcurrentHashMap<DeferrableInteractionEvent, Response> open = new ConcurrentHashMap<>();
+    protected static final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+
+    public final DeferrableInteractionEvent event;
+    public final String command;
+    public final long channel;
+    public final long receivedAt;
+
+    protected final AtomicInteger state = new AtomicInteger(state_open);
+    protected volatile boolean ephemeral;
+    protected volatile CompletableFuture<Void> deferral;
+    protected Disposable timer;
+
+    static
+    {
+        budgets.put("dex", 0L);
+        budgets.put("release", 0L);
+        budgets.put("join", 0L);
+    }
+
+    protected Response(DeferrableInteractionEvent event, String command, long channel, long receivedAt)
+    {
+        this.event = event;
+        this.command = command;
+        this.channel = channel;
+        this.receivedAt = receivedAt;
+    }
+
+    /**
+     * Starts the command's budget. {@link #finish} must be called once the command is done.
+     */
+    public static Response start(DeferrableInteractionEvent event, String command, long channel, long receivedAt)
+    {
+        Response r = new Response(event, command, channel, receivedAt);
+        open.put(event, r);
+
+        long budget = budgets.getOrDefault(command, default_budget_ms);
+
+        if (budget <= 0)
+            r.defer(false);
+        else
+        {
+            long remaining = budget * 1000000 - (System.nanoTime() - receivedAt);
+            r.timer = Mono.delay(Duration.ofNanos(Math.max(0, remaining))).subscribe(t -> r.defer(true));
+        }
+
+        return r;
+    }
+
+    /**
+     * Sends the reply, or if the interaction has already been deferred, puts it in the deferred response.
+     */
+    public static Mono<Void> send(InteractionApplicationCommandCallbackReplyMono reply)
+    {
+        return Mono.defer(() ->
+        {
+            Response r = open.get(reply.event());
+
+            if (r == null)
+                return reply;
+
+            return r.reply(reply);
+        });
+    }
+
+    protected synchronized Mono<Void> reply(InteractionApplicationCommandCallbackReplyMono reply)
+    {
+        if (this.state.compareAndSet(state_open, state_replied))
+            return reply;
+
+        // Everything a reply can carry goes along, so a deferred reply looks the same as one sent in time
+        String content = reply.contentOrElse("");
+        boolean ephemeral = reply.ephemeralOrElse(false);
+        List<EmbedCreateSpec> embeds = reply.embedsOrElse(Collections.emptyList());
+        List<LayoutComponent> components = reply.componentsOrElse(Collections.emptyList());
+
+        Mono<Void> deferred = Mono.fromFuture(this.deferral);
+
+        if (ephemeral == this.ephemeral)
+        {
+            InteractionReplyEditMono edit = this.event.editReply(content)
+                    .withEmbeds(embeds)
+                    .withFiles(reply.files())
+                    .withFileSpoilers(reply.fileSpoilers())
+                    .withComponentsOrNull(components);
+
+            if (reply.isAllowedMentionsPresent())
+                edit = edit.withAllowedMentionsOrNull(reply.allowedMentionsOrElse(null));
+
+            return deferred.then(edit).then();
+        }
+        else
+        {
+            InteractionFollowupCreateMono followup = this.event.createFollowup()
+                    .withContent(reply.content())
+                    .withTts(reply.ttsOrElse(false))
+                    .withEphemeral(ephemeral)
+                    .withEmbeds(embeds)
+                    .withFiles(reply.files())
+                    .withFileSpoilers(reply.fileSpoilers())
+                    .withAllowedMentions(reply.allowedMentions())
+                    .withComponents(components);
+
+            return deferred.then(this.event.deleteReply()).then(followup).then();
+        }
+    }
+
+    protected synchronized void defer(boolean ephemeral)
+    {
+        if (!this.state.compareAndSet(state_open, state_deferred))
+            return;
+
+        this.ephemeral = ephemeral;
+        // Sent straight away, not through the scheduler: it has to beat the deadline even when replies are queueing
+        this.deferral = this.event.deferReply().withEphemeral(ephemeral).toFuture();
+    }
+
+    public void finish()
+    {
+        if (this.timer != null)
+            this.timer.dispose();
+
+        open.remove(this.event);
+
+        long time = System.nanoTime() - this.receivedAt;
+        Stats s = stats.computeIfAbsent(this.command, c -> new Stats());
+        s.count.incrementAndGet();
+        s.totalNanos.addAndGet(time);
+        s.maxNanos.accumulate(time);
+
+        if (this.state.get() == state_deferred)
+            s.deferred.incrementAndGet();
+    }
+
+    public static String getStats()
+    {
+        StringBuilder b = new StringBuilder();
+
+        for (Map.Entry<String, Stats> e: new TreeMap<>(stats).entrySet())
+        {
+            Stats s = e.getValue();
+            long n = s.count.get();
+
+            if (b.length() > 0)
+                b.append(" ");
+
+            b.append(e.getKey()).append("[n=").append(n)
+                    .append(" avgMs=").append(n == 0 ? 0 : s.totalNanos.get() / n / 1000000)
+                    .append(" maxMs=").append(s.maxNanos.get() / 1000000)
+                    .append(" deferred=").append(s.deferred.get()).append("]");
+        }
+
+        return b.toString();
+    }
+
+    protected static class Stats
+    {
+        public final AtomicLong count = new AtomicLong();
+        public final AtomicLong deferred = new AtomicLong();
+        public final AtomicLong totalNanos = new AtomicLong();
+        public final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    }
+}
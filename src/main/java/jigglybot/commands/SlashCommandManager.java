@@ -1,7 +1,10 @@
 package jigglybot.commands;
 
 import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.interaction.ButtonInteractionEvent;
 import discord4j.core.event.domain.interaction.ChatInputInteractionEvent;
+import discord4j.core.event.domain.interaction.DeferrableInteractionEvent;
+import discord4j.core.spec.InteractionApplicationCommandCallbackReplyMono;
 import discord4j.discordjson.json.ApplicationCommandRequest;
 import discord4j.discordjson.json.ApplicationCommandOptionData;
 import discord4j.discordjson.json.ApplicationCommandOptionChoiceData;
@@ -16,12 +19,21 @@ import jigglybot.dialog.DialogEraseAllData;
 import jigglybot.location.Location;
 import jigglybot.monster.Monster;
 import jigglybot.monster.Species;
+import jigglybot.outbound.OutboundScheduler;
+import jigglybot.save.SaveQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 public class SlashCommandManager {
     
@@ -29,12 +41,10 @@ public class SlashCommandManager {
     
     private final GatewayDiscordClient gateway;
     private final RestClient restClient;
-    private final long applicationId;
 
     public SlashCommandManager(GatewayDiscordClient gateway) {
         this.gateway = gateway;
         this.restClient = gateway.getRestClient();
-        this.applicationId = gateway.getRestClient().getApplicationId().block();
     }
 
     public void registerCommands() {
@@ -262,36 +272,218 @@ public class SlashCommandManager {
             .description("Advance to next message")
             .build());
 
-        // Register all commands
-        for (ApplicationCommandRequest command : commands) {
-            restClient.getApplicationService()
-                .createGlobalApplicationCommand(applicationId, command)
-                .doOnError(error -> System.err.println("Failed to register command: " + command.name() + " - " + error.getMessage()))
-                .doOnSuccess(cmd -> System.out.println("Registered command: " + cmd.name()))
-                .subscribe();
-        }
+        // Register all commands, if they changed since the last time
+        new CommandRegistrar(restClient, gateway.getSelfId().asLong()).register(commands).subscribe();
     }
 
     public void setupEventHandlers() {
-        gateway.on(ChatInputInteractionEvent.class, this::handleSlashCommand).subscribe();
+        // Commands and buttons go through the gate as they arrive, before the flatMap. Turned away ones finish at
+        // once and admitted ones can't outnumber its slots, so the flatMap never holds an event back from the gate
+        Flux<Mono<Void>> commands = gateway.on(ChatInputInteractionEvent.class)
+            .map(event -> handleSlashCommand(event).onErrorResume(e -> {
+                logger.error("Error handling slash command: " + event.getCommandName(), e);
+                return Mono.empty();
+            }));
+
+        Flux<Mono<Void>> buttons = gateway.on(ButtonInteractionEvent.class)
+            .map(event -> handleButton(event).onErrorResume(e -> {
+                logger.error("Error handling button: " + event.getCustomId(), e);
+                return Mono.empty();
+            }));
+
+        Flux.merge(commands, buttons)
+            .flatMap(work -> work, CommandGate.max_in_flight * 2)
+            .subscribe();
     }
 
-    private Mono<Void> handleSlashCommand(ChatInputInteractionEvent event) {
+    /**
+     * Handles the page buttons. Their custom ids hold everything needed to find the channel and page,
+     * so a button on an old message just does nothing.
+     */
+    private Mono<Void> handleButton(ButtonInteractionEvent event) {
+        String[] parts = event.getCustomId().split(":");
+        long channelId = event.getInteraction().getChannelId().asLong();
+
+        try {
+            if (parts[0].equals(ChannelWrapper.next_page_id)) {
+                // Answering with an edit takes the button off the page it was on
+                Mono<Void> ack = OutboundScheduler.schedule(channelId, OutboundScheduler.lane_interaction, event.edit().withComponents());
+
+                // Page numbers start over on a restart, so a button from before one is only acknowledged
+                if (parts.length != 4 || !parts[1].equals(ChannelWrapper.page_nonce)) {
+                    return ack;
+                }
+
+                ChannelWrapper channel = ChannelWrapper.wrappers.get(Long.parseLong(parts[2]));
+                long page = Long.parseLong(parts[3]);
+
+                if (channel == null) {
+                    return ack;
+                }
+
+                return gated(event, channel, ack.then(channel.execute(() -> channel.advance(page))));
+            }
+
+            if (parts.length == 4 && parts[0].equals(UserWrapper.storage_page_id)) {
+                ChannelWrapper channel = ChannelWrapper.get(Long.parseLong(parts[1]), event.getInteraction().getChannel());
+                long userId = Long.parseLong(parts[2]);
+                int page = Integer.parseInt(parts[3]);
+
+                if (event.getInteraction().getUser().getId().asLong() != userId || event.getInteraction().getMember().isEmpty()) {
+                    return OutboundScheduler.schedule(channelId, OutboundScheduler.lane_interaction, event.reply("These aren't your POKéMON!").withEphemeral(true));
+                }
+
+                return gated(event, channel, channel.execute(() -> {
+                        UserWrapper user = UserWrapper.get(event.getInteraction().getMember().get());
+
+                        return withUserLock(user, () -> {
+                            int last = Math.max(0, (user.storage.size() - 1) / UserWrapper.entries_per_page);
+                            user.page = Math.max(0, Math.min(page, last));
+
+                            return event.edit(user.getMonstersString(channel)).withComponents(user.getStoragePageButtons(channel));
+                        });
+                    })
+                    .flatMap(reply -> OutboundScheduler.schedule(channelId, OutboundScheduler.lane_interaction, reply)));
+            }
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid button id: " + event.getCustomId());
+        }
+
+        return event.deferEdit();
+    }
+
+    /**
+     * Returns the button's work if the gate admits it, holding its place until the work is done, the same
+     * as a slash command. A button that is turned away gets the busy reply and an empty Mono.
+     */
+    private static Mono<Void> gated(ButtonInteractionEvent event, ChannelWrapper channel, Mono<Void> work) {
+        if (!CommandGate.tryEnter(channel)) {
+            replyBusy(event, event.getCustomId());
+            return Mono.empty();
+        }
+
+        return work.doFinally(s -> CommandGate.exit(channel));
+    }
+
+    /**
+     * Sent straight away, not through the scheduler, so it doesn't queue behind the replies keeping the bot busy.
+     */
+    private static void replyBusy(DeferrableInteractionEvent event, String what) {
+        event.reply(CommandGate.busy_message).withEphemeral(true)
+            .subscribe(null, e -> logger.warn("Failed to send busy reply for " + what, e));
+    }
+
+    /**
+     * Admits the command right away, and returns the work of running it. A command that is turned away
+     * gets the busy reply and an empty Mono.
+     */
+    Mono<Void> handleSlashCommand(ChatInputInteractionEvent event) {
         String commandName = event.getCommandName();
-        
-        // Get user and channel wrappers with error handling
+        long received = System.nanoTime();
+        ChannelWrapper entered = null;
+
         try {
             if (event.getInteraction().getMember().isEmpty()) {
                 return event.reply("❌ **Error:** Could not identify user!").withEphemeral(true);
             }
-            
-            UserWrapper user = UserWrapper.get(event.getInteraction().getMember().orElse(null));
-            ChannelWrapper channel = ChannelWrapper.get(event.getInteraction().getChannel().block());
-            
-            if (user == null || channel == null) {
-                return event.reply("❌ **Error:** Could not initialize user or channel data!").withEphemeral(true);
+
+            ChannelWrapper channel = ChannelWrapper.get(event.getInteraction().getChannelId().asLong(), event.getInteraction().getChannel());
+
+            if (!CommandGate.tryEnter(channel)) {
+                replyBusy(event, commandName);
+                return Mono.empty();
+            }
+
+            entered = channel;
+            Response response = Response.start(event, commandName, channel.id, received);
+            Admission admission = new Admission(channel);
+
+            // The user is looked up on the channel's worker too, since it may have to be loaded from disk
+            return channel.execute(() -> {
+                    if (!admission.start()) {
+                        return Mono.<Void>empty();
+                    }
+
+                    try {
+                        CommandGate.started(received);
+
+                        UserWrapper user = UserWrapper.get(event.getInteraction().getMember().orElse(null));
+
+                        if (user == null) {
+                            return respond(event.reply("❌ **Error:** Could not initialize user or channel data!").withEphemeral(true));
+                        }
+
+                        return withUserLock(user, () -> dispatch(commandName, event, user, channel));
+                    } finally {
+                        admission.release();
+                    }
+                })
+                // A command stuck in its channel's queue or on a user's lock stops waiting for its reply. If it
+                // hadn't started it never will, so the user may try again; if it had, it still goes through
+                .timeout(Duration.ofMillis(Response.timeout_ms))
+                .flatMap(reply -> OutboundScheduler.schedule(channel.id, OutboundScheduler.lane_interaction, reply))
+                .onErrorResume(TimeoutException.class, e -> {
+                    boolean dropped = admission.giveUp();
+                    logger.warn("Slash command timed out " + (dropped ? "before it ran: " : "while running: ") + commandName);
+                    return respond(event.reply(dropped ? Response.timeout_message : Response.still_running_message).withEphemeral(true));
+                })
+                .onErrorResume(e -> {
+                    logger.error("Error handling slash command: " + commandName, e);
+                    return respond(event.reply("❌ **An error occurred!** Please try again or contact support.").withEphemeral(true));
+                })
+                .doFinally(s -> {
+                    response.finish();
+                    admission.giveUp();
+                    admission.release();
+                });
+        } catch (Exception e) {
+            logger.error("Error handling slash command: " + commandName, e);
+
+            if (entered != null) {
+                CommandGate.exit(entered);
             }
 
+            return event.reply("❌ **An error occurred!** Please try again or contact support.").withEphemeral(true);
+        }
+    }
+
+    /**
+     * Runs the given work holding the user's lock. The channel's mailbox already keeps work in one channel
+     * in order; this keeps a user acting in two channels at once, or being saved, consistent.
+     */
+    private static <T> T withUserLock(UserWrapper user, Supplier<T> work) {
+        ReentrantLock lock = UserWrapper.locks.get(user.id);
+
+        lock.lock();
+        try {
+            return work.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queues a battle input on the channel's mailbox after the reply has been sent.
+     * The battle may have ended in the meantime, in which case the input is dropped.
+     */
+    private static Mono<Void> battleAction(ChannelWrapper channel, UserWrapper user, Consumer<Battle> action) {
+        return channel.execute(() -> withUserLock(user, () -> {
+            if (channel.currentBattle != null)
+                action.accept(channel.currentBattle);
+
+            return null;
+        }));
+    }
+
+    /**
+     * Sends a reply through the command's {@link Response}, which turns it into an edit if the command
+     * ran past its latency budget and was deferred.
+     */
+    private static Mono<Void> respond(InteractionApplicationCommandCallbackReplyMono reply) {
+        return Response.send(reply);
+    }
+
+    private Mono<Void> dispatch(String commandName, ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         switch (commandName) {
             case "help":
                 return handleHelp(event, user);
@@ -340,11 +532,7 @@ public class SlashCommandManager {
             case "next":
                 return handleNext(event, user, channel);
             default:
-                return event.reply("Unknown command!").withEphemeral(true);
-        }
-        } catch (Exception e) {
-            logger.error("Error handling slash command: " + commandName, e);
-            return event.reply("❌ **An error occurred!** Please try again or contact support.").withEphemeral(true);
+                return respond(event.reply("Unknown command!").withEphemeral(true));
         }
     }
 
@@ -384,12 +572,12 @@ public class SlashCommandManager {
             helpText += "\n\n**⚠️ You haven't started yet! Use `/start` to begin your adventure!**";
         }
 
-        return event.reply(helpText).withEphemeral(true);
+        return respond(event.reply(helpText).withEphemeral(true));
     }
 
     private Mono<Void> handleStart(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (user.initialized) {
-            return event.reply("You have already started your journey!").withEphemeral(true);
+            return respond(event.reply("You have already started your journey!").withEphemeral(true));
         }
 
         String pokemonChoice = event.getOption("pokemon")
@@ -398,30 +586,30 @@ public class SlashCommandManager {
             .orElse(null);
 
         if (pokemonChoice == null) {
-            return event.reply("**Welcome to the world of Pokemon!**\n\n" +
+            return respond(event.reply("**Welcome to the world of Pokemon!**\n\n" +
                 "Please choose your starter Pokemon:\n" +
                 "• Use `/start pokemon:Bulbasaur`\n" +
                 "• Use `/start pokemon:Charmander`\n" +
                 "• Use `/start pokemon:Squirtle`\n" +
-                "• Use `/start pokemon:Pikachu`");
+                "• Use `/start pokemon:Pikachu`"));
         }
 
         Species starter = Species.by_name.get(pokemonChoice.toLowerCase());
         if (starter == null) {
-            return event.reply("Invalid Pokemon choice! Please choose Bulbasaur, Charmander, Squirtle, or Pikachu.");
+            return respond(event.reply("Invalid Pokemon choice! Please choose Bulbasaur, Charmander, Squirtle, or Pikachu."));
         }
 
         // Setup starter Pokemon immediately without blocking operations
         user.pickStarterAsync(channel, starter);
         
-        return event.reply("**🎉 Congratulations!** You chose " + starter.name.toUpperCase() + " as your starter Pokemon!\n" +
+        return respond(event.reply("**🎉 Congratulations!** You chose " + starter.name.toUpperCase() + " as your starter Pokemon!\n" +
             "**Professor Oak:** Welcome to the world of Pokemon! Your adventure begins now!\n\n" +
-            "Use `/location` to see where you are and start exploring!");
+            "Use `/location` to see where you are and start exploring!"));
     }
 
     private Mono<Void> handleLocation(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         Location location = channel.location;
@@ -447,12 +635,12 @@ public class SlashCommandManager {
 
         response.append("\nUse `/move <number>` to travel to a destination!");
 
-        return event.reply(response.toString());
+        return respond(event.reply(response.toString()));
     }
 
     private Mono<Void> handlePokemon(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         Long pokemonNumber = event.getOption("number")
@@ -464,21 +652,21 @@ public class SlashCommandManager {
             try {
                 int index = pokemonNumber.intValue() - 1;
                 if (index >= 0 && index < user.squad.length && user.squad[index] != null) {
-                    return event.reply("**Pokemon #" + pokemonNumber + " Stats:**\n" + user.squad[index].getStatsString());
+                    return respond(event.reply("**Pokemon #" + pokemonNumber + " Stats:**\n" + user.squad[index].getStatsString()));
                 } else {
-                    return event.reply("Invalid Pokemon number!").withEphemeral(true);
+                    return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
                 }
             } catch (Exception e) {
-                return event.reply("Invalid Pokemon number!").withEphemeral(true);
+                return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
             }
         } else {
-            return event.reply(user.getMonstersString(channel));
+            return respond(event.reply(user.getMonstersString(channel)).withComponents(user.getStoragePageButtons(channel)));
         }
     }
 
     private Mono<Void> handleStats(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         long pokemonNumber = event.getOption("number")
@@ -489,22 +677,22 @@ public class SlashCommandManager {
         try {
             int index = (int) pokemonNumber - 1;
             if (index >= 0 && index < user.squad.length && user.squad[index] != null) {
-                return event.reply("**Detailed Stats for Pokemon #" + pokemonNumber + ":**\n" + user.squad[index].getStatsString());
+                return respond(event.reply("**Detailed Stats for Pokemon #" + pokemonNumber + ":**\n" + user.squad[index].getStatsString()));
             } else {
-                return event.reply("Invalid Pokemon number!").withEphemeral(true);
+                return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
             }
         } catch (Exception e) {
-            return event.reply("Invalid Pokemon number!").withEphemeral(true);
+            return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
         }
     }
 
     private Mono<Void> handleSwap(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (user.inBattle) {
-            return event.reply("Cannot swap Pokemon during battle!").withEphemeral(true);
+            return respond(event.reply("Cannot swap Pokemon during battle!").withEphemeral(true));
         }
 
         long first = event.getOption("first")
@@ -527,23 +715,24 @@ public class SlashCommandManager {
                 Monster temp = user.squad[firstIndex];
                 user.squad[firstIndex] = user.squad[secondIndex];
                 user.squad[secondIndex] = temp;
+                user.markDirty(UserWrapper.dirty_squad);
                 
-                return event.reply("✅ Swapped " + user.squad[firstIndex].getName() + " and " + user.squad[secondIndex].getName() + "!\n\n" + user.getMonstersString(channel));
+                return respond(event.reply("✅ Swapped " + user.squad[firstIndex].getName() + " and " + user.squad[secondIndex].getName() + "!\n\n" + user.getMonstersString(channel)).withComponents(user.getStoragePageButtons(channel)));
             } else {
-                return event.reply("Invalid Pokemon numbers!").withEphemeral(true);
+                return respond(event.reply("Invalid Pokemon numbers!").withEphemeral(true));
             }
         } catch (Exception e) {
-            return event.reply("Invalid Pokemon numbers!").withEphemeral(true);
+            return respond(event.reply("Invalid Pokemon numbers!").withEphemeral(true));
         }
     }
 
     private Mono<Void> handleMove(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle != null) {
-            return event.reply("Finish the battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the battle first!").withEphemeral(true));
         }
 
         long locationNumber = event.getOption("location")
@@ -556,62 +745,62 @@ public class SlashCommandManager {
             if (index >= 0 && index < channel.location.neighbors.length) {
                 Location newLocation = channel.location.neighbors[index];
                 channel.location = newLocation;
-                return event.reply("🚶 **Moved to " + newLocation.name + "!**\n\n" + Bot.getLocationString(newLocation, true));
+                return respond(event.reply("🚶 **Moved to " + newLocation.name + "!**\n\n" + Bot.getLocationString(newLocation, true)));
             } else {
-                return event.reply("Invalid location number!").withEphemeral(true);
+                return respond(event.reply("Invalid location number!").withEphemeral(true));
             }
         } catch (Exception e) {
-            return event.reply("Invalid location number!").withEphemeral(true);
+            return respond(event.reply("Invalid location number!").withEphemeral(true));
         }
     }
 
     private Mono<Void> handleSpawn(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.location.spawnEntries.isEmpty()) {
-            return event.reply("No Pokemon spawn in " + channel.location.name + "!").withEphemeral(true);
+            return respond(event.reply("No Pokemon spawn in " + channel.location.name + "!").withEphemeral(true));
         }
 
         if (channel.currentBattle != null) {
-            return event.reply("Finish the current battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the current battle first!").withEphemeral(true));
         }
 
         Monster monster = channel.location.spawn();
         channel.currentBattle = new Battle(channel, monster);
         
-        return event.reply("🌟 **Wild L" + monster.level + " " + monster.getName().toUpperCase() + " appeared!**\n" +
-            "Use `/join` to start the battle!");
+        return respond(event.reply("🌟 **Wild L" + monster.level + " " + monster.getName().toUpperCase() + " appeared!**\n" +
+            "Use `/join` to start the battle!"));
     }
 
     private Mono<Void> handleBattle(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle != null) {
-            return event.reply("Finish the current battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the current battle first!").withEphemeral(true));
         }
 
         Trainer trainer = new Trainer();
         channel.currentBattle = new Battle(channel, trainer);
         
-        return event.reply("⚔️ **" + trainer.name + " wants to fight!**\n" +
-            "Use `/join` to accept the challenge!");
+        return respond(event.reply("⚔️ **" + trainer.name + " wants to fight!**\n" +
+            "Use `/join` to accept the challenge!"));
     }
 
     private Mono<Void> handleHeal(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (user.inBattle) {
-            return event.reply("Finish the battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the battle first!").withEphemeral(true));
         }
 
         if (!channel.location.hasCenter) {
-            return event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true);
+            return respond(event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true));
         }
 
         // Heal all Pokemon
@@ -628,15 +817,15 @@ public class SlashCommandManager {
             }
         }
 
-        user.save();
-        return event.reply("🏥 **Welcome to the Pokemon Center!**\n" +
+        user.markDirty(UserWrapper.dirty_squad);
+        return respond(event.reply("🏥 **Welcome to the Pokemon Center!**\n" +
             "Your Pokemon have been healed to perfect health!\n" +
-            "We hope to see you again!");
+            "We hope to see you again!"));
     }
 
     private Mono<Void> handleDex(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         String query = event.getOption("query")
@@ -655,7 +844,7 @@ public class SlashCommandManager {
             }
 
             if (lastEntry == 0) {
-                return event.reply("You haven't discovered any Pokemon yet! Go explore and catch some Pokemon first!");
+                return respond(event.reply("You haven't discovered any Pokemon yet! Go explore and catch some Pokemon first!"));
             }
 
             int count = 0;
@@ -678,42 +867,42 @@ public class SlashCommandManager {
                 }
             }
 
-            return event.reply(response.toString());
+            return respond(event.reply(response.toString()));
         } else {
             try {
                 int num = Integer.parseInt(query);
                 Species species = Species.by_num.get(num);
                 if (species == null) {
-                    return event.reply("No Pokemon found with that number!").withEphemeral(true);
+                    return respond(event.reply("No Pokemon found with that number!").withEphemeral(true));
                 }
                 species.printDexEntry(channel, user, false);
-                return event.reply("Showing Pokedex entry for #" + num);
+                return respond(event.reply("Showing Pokedex entry for #" + num));
             } catch (NumberFormatException e) {
                 Species species = Species.by_name.get(query.toLowerCase());
                 if (species == null) {
-                    return event.reply("No Pokemon found with that name!").withEphemeral(true);
+                    return respond(event.reply("No Pokemon found with that name!").withEphemeral(true));
                 }
                 species.printDexEntry(channel, user, false);
-                return event.reply("Showing Pokedex entry for " + species.name.toUpperCase());
+                return respond(event.reply("Showing Pokedex entry for " + species.name.toUpperCase()));
             }
         }
     }
 
     private Mono<Void> handleSave(ChatInputInteractionEvent event, UserWrapper user) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
-        if (user.save()) {
-            return event.reply("💾 **Game saved successfully!**");
-        } else {
-            return event.reply("❌ **Failed to save game!**").withEphemeral(true);
-        }
+        // Write on the save thread and reply once the result is known
+        return Mono.fromFuture(SaveQueue.saveNow(user))
+            .flatMap(saved -> saved
+                ? respond(event.reply("💾 **Game saved successfully!**"))
+                : respond(event.reply("❌ **Failed to save game!**").withEphemeral(true)));
     }
 
     private Mono<Void> handleReset(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         String confirmation = event.getOption("confirm")
@@ -722,35 +911,35 @@ public class SlashCommandManager {
             .orElse(null);
 
         if (confirmation == null) {
-            return event.reply("⚠️ **DANGER: This will DELETE ALL your Pokemon and progress!**\n\n" +
+            return respond(event.reply("⚠️ **DANGER: This will DELETE ALL your Pokemon and progress!**\n\n" +
                 "Are you absolutely sure? This action cannot be undone!\n\n" +
                 "Use `/reset confirm:yes` if you really want to delete everything.\n" +
                 "Use `/reset confirm:no` to cancel.")
-                .withEphemeral(true);
+                .withEphemeral(true));
         }
 
         if ("yes".equals(confirmation)) {
             // Perform the reset
             user.reset();
-            return event.reply("💥 **Game data has been completely reset!**\n\n" +
+            return respond(event.reply("💥 **Game data has been completely reset!**\n\n" +
                 "All your Pokemon, progress, and data have been deleted.\n" +
-                "Use `/start` to begin a new adventure!");
+                "Use `/start` to begin a new adventure!"));
         } else {
-            return event.reply("✅ **Reset cancelled!** Your data is safe.").withEphemeral(true);
+            return respond(event.reply("✅ **Reset cancelled!** Your data is safe.").withEphemeral(true));
         }
     }
 
     private Mono<Void> handleDeposit(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (user.inBattle) {
-            return event.reply("Finish the battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the battle first!").withEphemeral(true));
         }
 
         if (!channel.location.hasCenter) {
-            return event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true);
+            return respond(event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true));
         }
 
         long pokemonNumber = event.getOption("pokemon")
@@ -762,7 +951,7 @@ public class SlashCommandManager {
             int index = (int) pokemonNumber - 1;
             if (index >= 0 && index < user.squad.length && user.squad[index] != null) {
                 if (index == 0 && user.squad[1] == null) {
-                    return event.reply("You can't deposit your last Pokemon!").withEphemeral(true);
+                    return respond(event.reply("You can't deposit your last Pokemon!").withEphemeral(true));
                 }
 
                 Monster pokemon = user.squad[index];
@@ -774,26 +963,28 @@ public class SlashCommandManager {
                     user.squad[i] = null;
                 }
 
-                return event.reply("💾 **Sent " + pokemon.getName() + " to Storage PC!**\n\n" + user.getMonstersString(channel));
+                user.markStored(pokemon);
+                user.markDirty(UserWrapper.dirty_squad);
+                return respond(event.reply("💾 **Sent " + pokemon.getName() + " to Storage PC!**\n\n" + user.getMonstersString(channel)).withComponents(user.getStoragePageButtons(channel)));
             } else {
-                return event.reply("Invalid Pokemon number!").withEphemeral(true);
+                return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
             }
         } catch (Exception e) {
-            return event.reply("Invalid Pokemon number!").withEphemeral(true);
+            return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
         }
     }
 
     private Mono<Void> handleWithdraw(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (user.inBattle) {
-            return event.reply("Finish the battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the battle first!").withEphemeral(true));
         }
 
         if (!channel.location.hasCenter) {
-            return event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true);
+            return respond(event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true));
         }
 
         long pokemonNumber = event.getOption("pokemon")
@@ -814,31 +1005,32 @@ public class SlashCommandManager {
                 }
 
                 if (freeSlot == -1) {
-                    return event.reply("Your team is full! Deposit a Pokemon first.").withEphemeral(true);
+                    return respond(event.reply("Your team is full! Deposit a Pokemon first.").withEphemeral(true));
                 }
 
                 Monster pokemon = user.storage.remove(index);
                 user.squad[freeSlot] = pokemon;
-                return event.reply("✅ **Took " + pokemon.getName() + " from Storage PC!**\n\n" + user.getMonstersString(channel));
+                user.markDirty();
+                return respond(event.reply("✅ **Took " + pokemon.getName() + " from Storage PC!**\n\n" + user.getMonstersString(channel)).withComponents(user.getStoragePageButtons(channel)));
             } else {
-                return event.reply("Invalid Pokemon number!").withEphemeral(true);
+                return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
             }
         } catch (Exception e) {
-            return event.reply("Invalid Pokemon number!").withEphemeral(true);
+            return respond(event.reply("Invalid Pokemon number!").withEphemeral(true));
         }
     }
 
     private Mono<Void> handleRelease(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (user.inBattle) {
-            return event.reply("Finish the battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the battle first!").withEphemeral(true));
         }
 
         if (!channel.location.hasCenter) {
-            return event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true);
+            return respond(event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true));
         }
 
         String pokemonNumbers = event.getOption("pokemon")
@@ -852,7 +1044,7 @@ public class SlashCommandManager {
             .orElse("");
 
         if (pokemonNumbers.isEmpty()) {
-            return event.reply("Please specify Pokemon numbers to release!").withEphemeral(true);
+            return respond(event.reply("Please specify Pokemon numbers to release!").withEphemeral(true));
         }
 
         ArrayList<Monster> pokemonToRelease = new ArrayList<>();
@@ -868,12 +1060,12 @@ public class SlashCommandManager {
                     }
                     // Skip duplicates silently - this is user-friendly behavior
                 } else {
-                    return event.reply("❌ Invalid Pokemon number: " + numberStr).withEphemeral(true);
+                    return respond(event.reply("❌ Invalid Pokemon number: " + numberStr).withEphemeral(true));
                 }
             }
             
             if (pokemonToRelease.isEmpty()) {
-                return event.reply("❌ No valid Pokemon to release!").withEphemeral(true);
+                return respond(event.reply("❌ No valid Pokemon to release!").withEphemeral(true));
             }
 
             // Build Pokemon names for messages
@@ -913,10 +1105,10 @@ public class SlashCommandManager {
                 }
                 
                 // Save the user data
-                user.save();
+                user.markDirty();
                 
-                return event.reply("✅ " + releaseText + " released outside. Bye!\n\n" +
-                    "Your Pokemon storage has been updated.");
+                return respond(event.reply("✅ " + releaseText + " released outside. Bye!\n\n" +
+                    "Your Pokemon storage has been updated."));
             } else {
                 // Show warning and ask for confirmation
                 StringBuilder response = new StringBuilder();
@@ -928,25 +1120,25 @@ public class SlashCommandManager {
                 }
                 response.append("\n**To confirm:** Run the same command again with `confirm: CONFIRM - Release Pokemon`");
                 
-                return event.reply(response.toString()).withEphemeral(true);
+                return respond(event.reply(response.toString()).withEphemeral(true));
             }
             
         } catch (Exception e) {
-            return event.reply("Invalid Pokemon numbers!").withEphemeral(true);
+            return respond(event.reply("Invalid Pokemon numbers!").withEphemeral(true));
         }
     }
 
     private Mono<Void> handlePage(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (user.inBattle) {
-            return event.reply("Finish the battle first!").withEphemeral(true);
+            return respond(event.reply("Finish the battle first!").withEphemeral(true));
         }
 
         if (!channel.location.hasCenter) {
-            return event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true);
+            return respond(event.reply("There is no Pokemon Center in " + channel.location.name + "!").withEphemeral(true));
         }
 
         long pageNumber = event.getOption("number")
@@ -958,36 +1150,36 @@ public class SlashCommandManager {
             int page = (int) pageNumber - 1;
             
             if (user.storage.size() == 0) {
-                return event.reply("❌ Your Pokemon storage is empty! No pages to display.").withEphemeral(true);
+                return respond(event.reply("❌ Your Pokemon storage is empty! No pages to display.").withEphemeral(true));
             }
             
             int maxPage = (user.storage.size() - 1) / UserWrapper.entries_per_page;
 
             if (page >= 0 && page <= maxPage) {
                 user.page = page;
-                return event.reply("📄 **Set page to " + pageNumber + "!**\n\n" + user.getMonstersString(channel));
+                return respond(event.reply("📄 **Set page to " + pageNumber + "!**\n\n" + user.getMonstersString(channel)).withComponents(user.getStoragePageButtons(channel)));
             } else {
-                return event.reply("❌ Maximum page is " + (maxPage + 1) + "!").withEphemeral(true);
+                return respond(event.reply("❌ Maximum page is " + (maxPage + 1) + "!").withEphemeral(true));
             }
         } catch (Exception e) {
-            return event.reply("Invalid page number!").withEphemeral(true);
+            return respond(event.reply("Invalid page number!").withEphemeral(true));
         }
     }
 
     // Battle command implementations
     private Mono<Void> handleJoin(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle == null) {
-            return event.reply("❌ No battle to join!").withEphemeral(true);
+            return respond(event.reply("❌ No battle to join!").withEphemeral(true));
         }
 
         // Validate join action
         String error = BattleUtils.validateJoinBattle(channel.currentBattle, user);
         if (error != null) {
-            return event.reply(error).withEphemeral(true);
+            return respond(event.reply(error).withEphemeral(true));
         }
 
         String pokemonChoice = event.getOption("pokemon")
@@ -995,23 +1187,23 @@ public class SlashCommandManager {
             .map(value -> value.asString())
             .orElse(null);
 
-        return event.reply("⚔️ **Joining the battle...**")
-            .then(Mono.fromRunnable(() -> channel.currentBattle.join(user, pokemonChoice)));
+        return respond(event.reply("⚔️ **Joining the battle...**"))
+            .then(battleAction(channel, user, b -> b.join(user, pokemonChoice)));
     }
 
     private Mono<Void> handleFight(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle == null) {
-            return event.reply("❌ No battle in progress!").withEphemeral(true);
+            return respond(event.reply("❌ No battle in progress!").withEphemeral(true));
         }
 
         // Validate fight action
         String error = BattleUtils.validateFightAction(channel.currentBattle, user);
         if (error != null) {
-            return event.reply(error).withEphemeral(true);
+            return respond(event.reply(error).withEphemeral(true));
         }
 
         String move = event.getOption("move")
@@ -1020,37 +1212,37 @@ public class SlashCommandManager {
             .orElse(null);
 
         if (move == null) {
-            return event.reply("❌ Please specify a move! Use `/fight move:1` or `/fight move:Tackle`").withEphemeral(true);
+            return respond(event.reply("❌ Please specify a move! Use `/fight move:1` or `/fight move:Tackle`").withEphemeral(true));
         }
 
         // Validate move before responding
         Monster playerMon = (user == channel.currentBattle.player1) ? channel.currentBattle.p1Mon : channel.currentBattle.p2Mon;
         if (playerMon == null) {
-            return event.reply("❌ You don't have a Pokemon in battle!").withEphemeral(true);
+            return respond(event.reply("❌ You don't have a Pokemon in battle!").withEphemeral(true));
         }
         
         // Check if move exists and has PP
         int moveIndex = BattleUtils.findMoveIndex(playerMon, move);
         if (moveIndex == -1) {
-            return event.reply("❌ Invalid move! Use move number (1-4) or exact move name.").withEphemeral(true);
+            return respond(event.reply("❌ Invalid move! Use move number (1-4) or exact move name.").withEphemeral(true));
         }
         
         if (playerMon.movePP[moveIndex] <= 0) {
-            return event.reply("❌ " + playerMon.moves[moveIndex].name + " has no PP left!").withEphemeral(true);
+            return respond(event.reply("❌ " + playerMon.moves[moveIndex].name + " has no PP left!").withEphemeral(true));
         }
         
         // Respond immediately, then process battle action
-        return event.reply("⚔️ **Using " + playerMon.moves[moveIndex].name + "...**")
-            .then(Mono.fromRunnable(() -> channel.currentBattle.inputFight(user, move)));
+        return respond(event.reply("⚔️ **Using " + playerMon.moves[moveIndex].name + "...**"))
+            .then(battleAction(channel, user, b -> b.inputFight(user, move)));
     }
 
     private Mono<Void> handleSwitch(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle == null) {
-            return event.reply("No battle in progress!").withEphemeral(true);
+            return respond(event.reply("No battle in progress!").withEphemeral(true));
         }
 
         String pokemon = event.getOption("pokemon")
@@ -1060,60 +1252,99 @@ public class SlashCommandManager {
 
         if (channel.currentBattle.player1 == null) {
             if (channel.currentBattle.prevP1 != user) {
-                return event.reply("You must join the battle first!").withEphemeral(true);
+                return respond(event.reply("You must join the battle first!").withEphemeral(true));
             }
-            return event.reply("🔄 **Joining battle with Pokemon...**")
-                .then(Mono.fromRunnable(() -> channel.currentBattle.join(user, pokemon)));
+            return respond(event.reply("🔄 **Joining battle with Pokemon...**"))
+                .then(battleAction(channel, user, b -> b.join(user, pokemon)));
         } else {
-            return event.reply("🔄 **Switching Pokemon...**")
-                .then(Mono.fromRunnable(() -> channel.currentBattle.inputSwitch(user, pokemon)));
+            return respond(event.reply("🔄 **Switching Pokemon...**"))
+                .then(battleAction(channel, user, b -> b.inputSwitch(user, pokemon)));
         }
     }
 
     private Mono<Void> handleCatch(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle == null) {
-            return event.reply("❌ No battle in progress!").withEphemeral(true);
+            return respond(event.reply("❌ No battle in progress!").withEphemeral(true));
         }
 
         // Validate catch action
         String error = BattleUtils.validateCatchAction(channel.currentBattle, user);
         if (error != null) {
-            return event.reply(error).withEphemeral(true);
+            return respond(event.reply(error).withEphemeral(true));
         }
 
-        return event.reply("🎯 **Throwing Pokeball...**")
-            .then(Mono.fromRunnable(() -> channel.currentBattle.inputCapture(user)));
+        return respond(event.reply("🎯 **Throwing Pokeball...**"))
+            .then(battleAction(channel, user, b -> b.inputCapture(user)));
     }
 
     private Mono<Void> handleRun(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         if (channel.currentBattle == null) {
-            return event.reply("❌ No battle in progress!").withEphemeral(true);
+            return respond(event.reply("❌ No battle in progress!").withEphemeral(true));
         }
 
         // Validate run action
         String error = BattleUtils.validateRunAction(channel.currentBattle, user);
         if (error != null) {
-            return event.reply(error).withEphemeral(true);
+            return respond(event.reply(error).withEphemeral(true));
         }
 
-        return event.reply("🏃 **Attempting to run...**")
-            .then(Mono.fromRunnable(() -> channel.currentBattle.inputRun(user)));
+        return respond(event.reply("🏃 **Attempting to run...**"))
+            .then(battleAction(channel, user, b -> b.inputRun(user)));
     }
 
     private Mono<Void> handleNext(ChatInputInteractionEvent event, UserWrapper user, ChannelWrapper channel) {
         if (!user.initialized) {
-            return event.reply("You need to start your journey first! Use `/start`").withEphemeral(true);
+            return respond(event.reply("You need to start your journey first! Use `/start`").withEphemeral(true));
         }
 
         channel.advance();
-        return event.reply("➡️ **Advanced to next message!**");
+        return respond(event.reply("➡️ **Advanced to next message!**"));
+    }
+
+    /**
+     * Holds a slash command's place in the {@link CommandGate} until both its work on the channel's mailbox and
+     * its reply are done, so a command whose reply was given up on still counts while it runs. Work given up on
+     * before it started never runs, and only the reply holds the place then.
+     */
+    private static class Admission {
+        private static final int waiting = 0;
+        private static final int running = 1;
+        private static final int dropped = 2;
+
+        private final ChannelWrapper channel;
+        private final AtomicInteger state = new AtomicInteger(waiting);
+        private final AtomicInteger holds = new AtomicInteger(2);
+
+        Admission(ChannelWrapper channel) {
+            this.channel = channel;
+        }
+
+        /** Called by the work before it runs; false if it was given up on and must not run */
+        boolean start() {
+            return state.compareAndSet(waiting, running);
+        }
+
+        /** Drops the work if it hasn't started, and returns whether it was dropped, now or before */
+        boolean giveUp() {
+            if (state.compareAndSet(waiting, dropped)) {
+                release();
+            }
+
+            return state.get() == dropped;
+        }
+
+        void release() {
+            if (holds.decrementAndGet() == 0) {
+                CommandGate.exit(channel);
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -3,6 +3,7 @@ package jigglybot.dialog;
 import jigglybot.ChannelWrapper;
 import jigglybot.Dialog;
 import jigglybot.UserWrapper;
+import jigglybot.save.SaveQueue;
 
 public class DialogEraseAllData extends Dialog
 {
@@ -14,7 +15,7 @@ public class DialogEraseAllData extends Dialog
     @Override
     public void execute()
     {
-        channelWrapper.messageChannel.createMessage("Are you sure you want to erase all your data and start fresh? This cannot be undone! (ERASE/CANCEL)").block();
+        channelWrapper.send("Are you sure you want to erase all your data and start fresh? This cannot be undone! (ERASE/CANCEL)");
     }
 
     @Override
@@ -22,14 +23,14 @@ public class DialogEraseAllData extends Dialog
     {
         if (s.toLowerCase().equals("erase"))
         {
-            UserWrapper.wrappers.remove(user.id);
-            user.getFile().delete();
-            channelWrapper.messageChannel.createMessage("Successfully erased all your data!").block();
+            UserWrapper.cache.remove(user.id);
+            SaveQueue.delete(user);
+            channelWrapper.send("Successfully erased all your data!");
             channelWrapper.currentDialog = null;
         }
         else
         {
-            channelWrapper.messageChannel.createMessage("Your data was not erased!").block();
+            channelWrapper.send("Your data was not erased!");
             channelWrapper.currentDialog = null;
         }
     }
@@ -67,7 +67,7 @@ public class DialogLearnMove extends Dialog
             }
             else
             {
-                this.channelWrapper.messageChannel.createMessage("Please input YES or NO!").block();
+                this.channelWrapper.send("Please input YES or NO!");
             }
         }
         else if (this.location == 1)
@@ -79,7 +79,7 @@ public class DialogLearnMove extends Dialog
             }
             else if (s.toLowerCase().equals("forget"))
             {
-                this.channelWrapper.messageChannel.createMessage("Please specify MOVE!").block();
+                this.channelWrapper.send("Please specify MOVE!");
             }
             else if (s.toLowerCase().startsWith("forget "))
             {
@@ -110,7 +110,7 @@ public class DialogLearnMove extends Dialog
                 }
                 else
                 {
-                    this.channelWrapper.messageChannel.createMessage("Invalid move!").block();
+                    this.channelWrapper.send("Invalid move!");
                 }
             }
         }
@@ -128,7 +128,7 @@ public class DialogLearnMove extends Dialog
             }
             else
             {
-                this.channelWrapper.messageChannel.createMessage("Please input YES or NO!").block();
+                this.channelWrapper.send("Please input YES or NO!");
             }
         }
     }
@@ -177,6 +177,7 @@ public class DialogLearnMove extends Dialog
             this.channelWrapper.queue(this.monster.getName() + " learned " + this.move.name + "!");
             this.monster.moves[this.forgetMove] = this.move;
             this.monster.movePP[this.forgetMove] = this.move.maxPP;
+            this.user.markDirty(UserWrapper.dirty_squad);
             this.channelWrapper.advance();
 
             this.channelWrapper.currentDialog = null;
@@ -43,7 +43,7 @@ public class DialogPickNickname extends Dialog
             }
             else
             {
-                this.channelWrapper.messageChannel.createMessage("Please input YES or NO!").block();
+                this.channelWrapper.send("Please input YES or NO!");
             }
         }
         else if (this.location == 1)
@@ -60,14 +60,14 @@ public class DialogPickNickname extends Dialog
                     String sec = s.substring(s.indexOf(" ") + 1);
 
                     if (sec.length() > 20)
-                        this.channelWrapper.messageChannel.createMessage("That nickname is too long!").block();
+                        this.channelWrapper.send("That nickname is too long!");
                     else
                     {
                         for (int i = 0; i < s.length(); i++)
                         {
                             if (!("abcdefghijklmnopqrstuvwxyz():;[]-?!/., ".contains(s.toLowerCase().charAt(i) + "")))
                             {
-                                this.channelWrapper.messageChannel.createMessage("Invalid nickname!").block();
+                                this.channelWrapper.send("Invalid nickname!");
                                 return;
                             }
                         }
@@ -78,11 +78,11 @@ public class DialogPickNickname extends Dialog
                     }
                 }
                 else
-                    this.channelWrapper.messageChannel.createMessage("Please specify nickname!").block();
+                    this.channelWrapper.send("Please specify nickname!");
             }
             else
             {
-                this.channelWrapper.messageChannel.createMessage("Please choose NICK or CANCEL!").block();
+                this.channelWrapper.send("Please choose NICK or CANCEL!");
             }
         }
         else if (this.location == 2)
@@ -99,7 +99,7 @@ public class DialogPickNickname extends Dialog
             }
             else
             {
-                this.channelWrapper.messageChannel.createMessage("Please input YES or NO!").block();
+                this.channelWrapper.send("Please input YES or NO!");
             }
         }
     }
@@ -133,6 +133,7 @@ public class DialogPickNickname extends Dialog
             if (!found)
             {
                 this.user.storage.add(this.monster);
+                this.user.markStored(this.monster);
                 this.channelWrapper.queue(this.monster.getName() + " was transferred to STORAGE PC!");
             }
             else
@@ -140,7 +141,7 @@ public class DialogPickNickname extends Dialog
 
             this.channelWrapper.advance();
             this.channelWrapper.currentDialog = null;
-            this.user.save();
+            this.user.markDirty(UserWrapper.dirty_squad | UserWrapper.dirty_dex);
         }
     }
 }
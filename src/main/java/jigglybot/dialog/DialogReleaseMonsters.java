@@ -42,7 +42,7 @@ public class DialogReleaseMonsters extends Dialog
             mons.append(" are");
         }
 
-        channelWrapper.messageChannel.createMessage("Once released, " + mons + " gone forever! OK? (RELEASE/CANCEL)").block();
+        channelWrapper.send("Once released, " + mons + " gone forever! OK? (RELEASE/CANCEL)");
     }
 
     @Override
@@ -55,6 +55,8 @@ public class DialogReleaseMonsters extends Dialog
                 user.storage.remove(m);
             }
 
+            user.markDirty();
+
             StringBuilder mons = new StringBuilder();
 
             if (monsters.size() == 1)
@@ -77,12 +79,12 @@ public class DialogReleaseMonsters extends Dialog
                 mons.append(" were");
             }
 
-            channelWrapper.messageChannel.createMessage(mons + " released outside. Bye!").block();
+            channelWrapper.send(mons + " released outside. Bye!");
             channelWrapper.currentDialog = null;
         }
         else
         {
-            channelWrapper.messageChannel.createMessage("No POKéMON were released!").block();
+            channelWrapper.send("No POKéMON were released!");
             channelWrapper.currentDialog = null;
         }
     }
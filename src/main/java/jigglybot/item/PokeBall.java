@@ -31,7 +31,8 @@ public class PokeBall extends BattleItemType
     @Override
     public void use(Battle b, ICanBattle u, ChannelWrapper cw)
     {
-        int i = b.p2Mon.getCaptureResult(this.type);
+        int i = b.p2Mon.getCaptureResult(this.type, b.random);
+        b.log.capture(b.p2Mon, this.type, i);
 
         if (i == -1)
         {
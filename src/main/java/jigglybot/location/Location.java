@@ -1,14 +1,19 @@
 package jigglybot.location;
 
+import jigglybot.Rng;
 import jigglybot.monster.Monster;
 import jigglybot.monster.Species;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.SplittableRandom;
 
 public class Location
 {
     public Location[] neighbors;
     public ArrayList<SpawnEntry> spawnEntries = new ArrayList<>();
+    public SpawnTable spawnTable;
 
     public int id;
     public final String name;
@@ -738,37 +743,81 @@ public class Location
         cerulean_cave.spawnEntries.add(new SpawnEntry("ditto", new int[]{60, 65}, 15));
 
         cerulean_cave.spawnEntries.add(new SpawnEntry("mewtwo", new int[]{70}, 9));
+
+        for (Location l: allLocations)
+            l.spawnTable = new SpawnTable(l.spawnEntries);
+
+        setupNests();
     }
 
-    public Monster spawn()
+    /**
+     * Builds each species' list of nests from the spawn entries of every location, in location order.
+     */
+    public static void setupNests()
     {
-        int total = 0;
-        int current = 0;
+        HashMap<Species, ArrayList<Nest>> nests = new HashMap<>();
 
-        for (SpawnEntry s: this.spawnEntries)
-            total += s.weight;
+        for (Location l: allLocations)
+        {
+            HashMap<Species, Nest> here = new LinkedHashMap<>();
+            int total = 0;
 
-        int num = (int) (Math.random() * total);
+            for (SpawnEntry e: l.spawnEntries)
+            {
+                here.computeIfAbsent(e.species, s -> new Nest(l, s)).add(e);
+                total += e.weight;
+            }
 
-        SpawnEntry spawnEntry = null;
-        for (SpawnEntry s: this.spawnEntries)
-        {
-            current += s.weight;
-            if (current > num)
+            for (Nest n: here.values())
             {
-                spawnEntry = s;
-                break;
+                n.totalWeight = total;
+                nests.computeIfAbsent(n.species, s -> new ArrayList<>()).add(n);
             }
         }
 
+        for (Species s: Species.by_num.values())
+        {
+            ArrayList<Nest> list = nests.get(s);
+            s.nests = list == null ? new Nest[0] : list.toArray(new Nest[0]);
+        }
+    }
+
+    /**
+     * Returns the alias table for this location's spawn entries, building a new one (and the nests)
+     * if the entries were replaced or added to since the last one was built.
+     */
+    public SpawnTable getSpawnTable()
+    {
+        SpawnTable t = this.spawnTable;
+
+        if (t == null || !t.isCurrent(this.spawnEntries))
+        {
+            t = new SpawnTable(this.spawnEntries);
+            this.spawnTable = t;
+
+            setupNests();
+        }
+
+        return t;
+    }
+
+    public Monster spawn()
+    {
+        return this.spawn(Rng.get());
+    }
+
+    public Monster spawn(SplittableRandom random)
+    {
+        SpawnEntry spawnEntry = this.getSpawnTable().pick(random);
+
         Monster m;
 
-        if (Math.random() < 0.0001)
-            m = new Monster(Species.by_name.get("mew"), (int) (Math.random() * 100 + 1));
+        if (random.nextInt(10000) == 0)
+            m = new Monster(Species.by_name.get("mew"), random.nextInt(1, 101), random);
         else
         {
-            int level = spawnEntry.levels[(int) (Math.random() * spawnEntry.levels.length)];
-            m = new Monster(spawnEntry.species, level);
+            int level = spawnEntry.levels[random.nextInt(spawnEntry.levels.length)];
+            m = new Monster(spawnEntry.species, level, random);
         }
 
         return m;
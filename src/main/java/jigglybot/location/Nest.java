@@ -0,0 +1,56 @@
+package jigglybot.location;
+
+import jigglybot.monster.Species;
+
+import java.util.Locale;
+
+/**
+ * Where a species can be found: one location, the levels it shows up at there, and how often.
+ * Several spawn entries for the same species in a location are merged into one nest.
+ */
+public class Nest
+{
+    public final Location location;
+    public final Species species;
+
+    public int minLevel = Integer.MAX_VALUE;
+    public int maxLevel = 0;
+
+    /** Sum of the weights of this species' spawn entries, out of the location's total weight */
+    public int weight = 0;
+    public int totalWeight = 0;
+
+    public Nest(Location location, Species species)
+    {
+        this.location = location;
+        this.species = species;
+    }
+
+    public void add(SpawnEntry e)
+    {
+        this.weight += e.weight;
+
+        for (int l: e.levels)
+        {
+            this.minLevel = Math.min(this.minLevel, l);
+            this.maxLevel = Math.max(this.maxLevel, l);
+        }
+    }
+
+    /**
+     * Percent of encounters in the location that are this species
+     */
+    public double getChance()
+    {
+        return this.weight * 100.0 / this.totalWeight;
+    }
+
+    @Override
+    public String toString()
+    {
+        String levels = this.minLevel == this.maxLevel ? "L" + this.minLevel : "L" + this.minLevel + "-" + this.maxLevel;
+        double chance = this.getChance();
+
+        return this.location.name + " " + levels + " " + String.format(Locale.ROOT, chance < 1 ? "%.1f%%" : "%.0f%%", chance);
+    }
+}
@@ -0,0 +1,109 @@
+package jigglybot.location;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Alias table (Vose's method) over a location's spawn entries, so picking an encounter takes one random
+ * number and no walk through the list. Weights are whole numbers, so the table is built in integers and
+ * gives exactly the same chances as the weights do.
+ */
+public class SpawnTable
+{
+    /** The list this table was built from, to notice when a location gets new spawn entries */
+    public final List<SpawnEntry> source;
+
+    public final SpawnEntry[] entries;
+    public final int totalWeight;
+
+    /** Out of totalWeight, how often a column keeps its own entry instead of its alias */
+    protected final int[] keep;
+    protected final int[] alias;
+
+    public SpawnTable(List<SpawnEntry> source)
+    {
+        this.source = source;
+        this.entries = source.toArray(new SpawnEntry[0]);
+
+        int n = this.entries.length;
+        int total = 0;
+
+        for (SpawnEntry e: this.entries)
+            total += e.weight;
+
+        this.totalWeight = total;
+        this.keep = new int[n];
+        this.alias = new int[n];
+
+        // Every column holds totalWeight; a weight's share of the table is weight * n
+        int[] scaled = new int[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+
+        for (int i = 0; i < n; i++)
+        {
+            scaled[i] = this.entries[i].weight * n;
+
+            if (scaled[i] < total)
+                small[smallCount++] = i;
+            else
+                large[largeCount++] = i;
+        }
+
+        while (smallCount > 0 && largeCount > 0)
+        {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+
+            this.keep[s] = scaled[s];
+            this.alias[s] = l;
+
+            scaled[l] -= total - scaled[s];
+
+            if (scaled[l] < total)
+                small[smallCount++] = l;
+            else
+                large[largeCount++] = l;
+        }
+
+        while (largeCount > 0)
+        {
+            int l = large[--largeCount];
+            this.keep[l] = total;
+            this.alias[l] = l;
+        }
+
+        while (smallCount > 0)
+        {
+            int s = small[--smallCount];
+            this.keep[s] = total;
+            this.alias[s] = s;
+        }
+    }
+
+    public boolean isCurrent(List<SpawnEntry> list)
+    {
+        return this.source == list && this.entries.length == list.size();
+    }
+
+    public SpawnEntry pick(SplittableRandom random)
+    {
+        return this.pick(random.nextInt(this.entries.length * this.totalWeight));
+    }
+
+    /**
+     * Picks the entry for a number from 0 up to entries.length * totalWeight. Going through every such
+     * number picks each entry exactly weight * entries.length times.
+     */
+    public SpawnEntry pick(int r)
+    {
+        int column = r / this.totalWeight;
+
+        if (r - column * this.totalWeight < this.keep[column])
+            return this.entries[column];
+        else
+            return this.entries[this.alias[column]];
+    }
+}
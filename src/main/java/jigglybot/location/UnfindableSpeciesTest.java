@@ -2,8 +2,6 @@ package jigglybot.location;
 
 import jigglybot.monster.Species;
 
-import java.util.ArrayList;
-
 public class UnfindableSpeciesTest
 {
     public static void main(String[] args)
@@ -13,20 +11,7 @@ public class UnfindableSpeciesTest
 
         for (Species s: Species.by_num.values())
         {
-            ArrayList<Location> spawns = new ArrayList<>();
-            for (Location l: Location.allLocations)
-            {
-                for (SpawnEntry e: l.spawnEntries)
-                {
-                    if (e.species == s)
-                    {
-                        spawns.add(l);
-                        break;
-                    }
-                }
-            }
-
-            if (spawns.isEmpty())
+            if (s.nests.length == 0)
                 System.out.println(s.name);
         }
     }
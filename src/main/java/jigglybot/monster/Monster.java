@@ -1,17 +1,21 @@
 package jigglybot.monster;
 
 import discord4j.common.util.Snowflake;
-import discord4j.core.spec.legacy.LegacyMessageCreateSpec;
 import jigglybot.Bot;
 import jigglybot.ChannelWrapper;
 import jigglybot.ICanBattle;
+import jigglybot.Rng;
 import jigglybot.UserWrapper;
+import jigglybot.battle.BattleState;
 import jigglybot.battle.action.Move;
 import jigglybot.battle.action.MoveList;
 import jigglybot.item.PokeBall;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.function.Consumer;
+import java.util.SplittableRandom;
 
 public class Monster implements ICanBattle
 {
@@ -19,11 +23,11 @@ public class Monster implements ICanBattle
 
     public int catchRate;
 
-    public int attackIv = (int) (Math.random() * 16);
-    public int defenseIv = (int) (Math.random() * 16);
-    public int speedIv = (int) (Math.random() * 16);
-    public int specialIv = (int) (Math.random() * 16);
-    public int hpIv = (attackIv % 2) * 8 + (defenseIv % 2) * 4 + (speedIv % 2) * 2 + (specialIv % 2);
+    public int attackIv;
+    public int defenseIv;
+    public int speedIv;
+    public int specialIv;
+    public int hpIv;
 
     public String name;
     public long originalTrainer;
@@ -75,8 +79,33 @@ public class Monster implements ICanBattle
 
     public static final int confused = 6;
 
+    /**
+     * Experience needed for each level by growth rate, up to level 101 so that a level 100 monster can still check for the next level.
+     */
+    protected static final int[][] level_xp = new int[4][102];
+
+    static
+    {
+        for (int type = 0; type < level_xp.length; type++)
+        {
+            for (int level = 0; level < level_xp[type].length; level++)
+                level_xp[type][level] = computeLevelXP(type, level);
+        }
+    }
+
     public Monster(Species species, int level)
     {
+        this(species, level, Rng.get());
+    }
+
+    public Monster(Species species, int level, SplittableRandom random)
+    {
+        this.attackIv = random.nextInt(16);
+        this.defenseIv = random.nextInt(16);
+        this.speedIv = random.nextInt(16);
+        this.specialIv = random.nextInt(16);
+        this.hpIv = (attackIv % 2) * 8 + (defenseIv % 2) * 4 + (speedIv % 2) * 2 + (specialIv % 2);
+
         this.species = species;
         this.setLevel(level);
         this.recalculateStats();
@@ -84,15 +113,23 @@ public class Monster implements ICanBattle
         this.name = species.name.toUpperCase();
         this.hp = this.maxHp;
 
-        this.moves[0] = MoveList.allMoves.get((int) (MoveList.allMoves.size() * Math.random()));
-        this.moves[1] = MoveList.allMoves.get((int) (MoveList.allMoves.size() * Math.random()));
-        this.moves[2] = MoveList.allMoves.get((int) (MoveList.allMoves.size() * Math.random()));
+        this.moves[0] = MoveList.allMoves.get(random.nextInt(MoveList.allMoves.size()));
+        this.moves[1] = MoveList.allMoves.get(random.nextInt(MoveList.allMoves.size()));
+        this.moves[2] = MoveList.allMoves.get(random.nextInt(MoveList.allMoves.size()));
         this.movePP[0] = this.moves[0].maxPP;
         this.movePP[1] = this.moves[1].maxPP;
         this.movePP[2] = this.moves[2].maxPP;
 
     }
 
+    /**
+     * Makes a monster out of a slot of a {@link BattleState}.
+     */
+    public Monster(BattleState state, int slot)
+    {
+        state.store(slot, this);
+    }
+
     public Monster(String s, UserWrapper owner)
     {
         this.isWild = false;
@@ -100,6 +137,18 @@ public class Monster implements ICanBattle
         this.fromString(s);
     }
 
+    public Monster(DataInput in, Move[] moveTable) throws IOException
+    {
+        this.read(in, moveTable);
+    }
+
+    public Monster(DataInput in, Move[] moveTable, UserWrapper owner) throws IOException
+    {
+        this.isWild = false;
+        this.owner = owner.id;
+        this.read(in, moveTable);
+    }
+
     public static int getDamage(Monster attacker, Monster enemy, double power, boolean special, boolean crit, double modifier)
     {
         double critBonus = 1;
@@ -121,7 +170,7 @@ public class Monster implements ICanBattle
     {
         int prevMaxHP = this.maxHp;
 
-        this.maxHp = (int) (((this.species.baseHP + this.hpIv) * 2 + Math.sqrt(this.hpEv) / 4) * this.level / 100 + this.level + 10);
+        this.maxHp = calculateHp(this.species.baseHP, this.hpIv, this.hpEv, this.level);
         this.attack = calculateStat(this.species.baseAttack, this.attackIv, this.attackEv, this.level);
         this.defense = calculateStat(this.species.baseDefense, this.defenseIv, this.defenseEv, this.level);
         this.speed = calculateStat(this.species.baseSpeed, this.speedIv, this.speedEv, this.level);
@@ -144,9 +193,12 @@ public class Monster implements ICanBattle
         {
             lvlup = true;
             this.level++;
-            this.recalculateStats();
         }
 
+        // Stats only depend on the final level, and the HP gained adds up the same either way
+        if (lvlup)
+            this.recalculateStats();
+
         return lvlup;
     }
 
@@ -173,6 +225,17 @@ public class Monster implements ICanBattle
     }
 
     public static int getLevelXP(int type, int level)
+    {
+        if (type >= 0 && type < level_xp.length && level >= 0 && level < level_xp[type].length)
+            return level_xp[type][level];
+
+        return computeLevelXP(type, level);
+    }
+
+    /**
+     * The experience curve itself; {@link #getLevelXP} reads it from {@link #level_xp} instead.
+     */
+    public static int computeLevelXP(int type, int level)
     {
         if (type == Species.xp_fast)
             return (int) (0.8 * Math.pow(level, 3));
@@ -186,12 +249,17 @@ public class Monster implements ICanBattle
             return 1;
     }
 
+    public static int calculateHp(int base, int iv, int ev, int level)
+    {
+        return (int) (((base + iv) * 2 + Math.sqrt(ev) / 4) * level / 100 + level + 10);
+    }
+
     public static int calculateStat(int base, int iv, int ev, int level)
     {
         return (int) (((base + iv) * 2 + Math.sqrt(ev) / 4) * level / 100 + 5);
     }
 
-    public int getCaptureResult(int ball)
+    public int getCaptureResult(int ball, SplittableRandom random)
     {
         if (!this.isWild)
             return -1;
@@ -206,7 +274,7 @@ public class Monster implements ICanBattle
         else if (ball == PokeBall.great_ball_num)
             maxN = 201;
 
-        int n = (int) (Math.random() * maxN);
+        int n = random.nextInt(maxN);
 
         if (this.status == asleep || this.status == frozen)
             n -= 25;
@@ -220,7 +288,7 @@ public class Monster implements ICanBattle
             return 4;
         if (n <= this.catchRate)
         {
-            int m = (int) (Math.random() * 256);
+            int m = random.nextInt(256);
 
             if (f >= m)
                 return 4;
@@ -250,20 +318,28 @@ public class Monster implements ICanBattle
         return 3;
     }
 
-    public String modifyStage(int stage, int amount)
+    /**
+     * Moves a stat stage by the given amount within -6 to 6, and returns how far it actually moved.
+     */
+    public int modifyStage(int stage, int amount)
     {
         int prev = this.stages[stage];
         this.stages[stage] += amount;
         this.stages[stage] = Math.min(Math.max(this.stages[stage], -6), 6);
 
-        if (prev - this.stages[stage] == 1)
-            return this.getName() + "'s " + getStageName(stage) + " fell!";
-        else if (prev - this.stages[stage] >= 2)
-            return this.getName() + "'s " + getStageName(stage) + " greatly fell!";
-        else if (prev - this.stages[stage] == -1)
-            return this.getName() + "'s " + getStageName(stage) + " rose!";
-        else if (prev - this.stages[stage] <= -2)
-            return this.getName() + "'s " + getStageName(stage) + " greatly rose!";
+        return this.stages[stage] - prev;
+    }
+
+    public static String getStageChangeMessage(Monster m, int stage, int change)
+    {
+        if (change == -1)
+            return m.getName() + "'s " + getStageName(stage) + " fell!";
+        else if (change <= -2)
+            return m.getName() + "'s " + getStageName(stage) + " greatly fell!";
+        else if (change == 1)
+            return m.getName() + "'s " + getStageName(stage) + " rose!";
+        else if (change >= 2)
+            return m.getName() + "'s " + getStageName(stage) + " greatly rose!";
         else
             return "Nothing happened!";
     }
@@ -354,7 +430,7 @@ public class Monster implements ICanBattle
         }
 
         if (validMoves.size() > 0)
-            cw.currentBattle.actionDecided(validMoves.get((int) (Math.random() * validMoves.size())));
+            cw.currentBattle.actionDecided(validMoves.get(Rng.get().nextInt(validMoves.size())));
         else
         {
             cw.queue(m.getName() + " has no moves left!");
@@ -443,6 +519,8 @@ public class Monster implements ICanBattle
             this.movePP[i - 9] = Integer.parseInt(s[i]);
         }
 
+        this.compactMoves();
+
         this.originalTrainer = Long.parseLong(s[13]);
         this.xp = Integer.parseInt(s[14]);
 
@@ -465,6 +543,124 @@ public class Monster implements ICanBattle
         this.special = Integer.parseInt(s[29]);
     }
 
+    /**
+     * Writes this monster as a fixed-width binary record (apart from the name).
+     * Moves are written as indices into the save file's move table, given by moveKeys[move.id].
+     */
+    public void write(DataOutput out, int[] moveKeys) throws IOException
+    {
+        out.writeShort(this.species.id);
+        out.writeUTF(this.name);
+        out.writeShort(this.hp);
+        out.writeByte(this.level);
+        out.writeByte(this.status);
+
+        for (Move m: this.moves)
+        {
+            if (m == null || m.id < 0)
+                out.writeShort(-1);
+            else
+                out.writeShort(moveKeys[m.id]);
+        }
+
+        for (int m: this.movePP)
+        {
+            out.writeByte(m);
+        }
+
+        out.writeLong(this.originalTrainer);
+        out.writeInt(this.xp);
+
+        out.writeInt(this.hpEv);
+        out.writeInt(this.attackEv);
+        out.writeInt(this.defenseEv);
+        out.writeInt(this.speedEv);
+        out.writeInt(this.specialEv);
+
+        out.writeByte(this.hpIv);
+        out.writeByte(this.attackIv);
+        out.writeByte(this.defenseIv);
+        out.writeByte(this.speedIv);
+        out.writeByte(this.specialIv);
+
+        out.writeShort(this.maxHp);
+        out.writeShort(this.attack);
+        out.writeShort(this.defense);
+        out.writeShort(this.speed);
+        out.writeShort(this.special);
+    }
+
+    public void read(DataInput in, Move[] moveTable) throws IOException
+    {
+        this.species = Species.by_num.get((int) in.readShort());
+        this.name = in.readUTF();
+        this.hp = in.readShort();
+        this.level = in.readUnsignedByte();
+        this.status = in.readUnsignedByte();
+
+        for (int i = 0; i < this.moves.length; i++)
+        {
+            int m = in.readShort();
+            this.moves[i] = m < 0 ? null : moveTable[m];
+        }
+
+        for (int i = 0; i < this.movePP.length; i++)
+        {
+            this.movePP[i] = in.readUnsignedByte();
+        }
+
+        this.originalTrainer = in.readLong();
+        this.xp = in.readInt();
+
+        this.hpEv = in.readInt();
+        this.attackEv = in.readInt();
+        this.defenseEv = in.readInt();
+        this.speedEv = in.readInt();
+        this.specialEv = in.readInt();
+
+        this.hpIv = in.readUnsignedByte();
+        this.attackIv = in.readUnsignedByte();
+        this.defenseIv = in.readUnsignedByte();
+        this.speedIv = in.readUnsignedByte();
+        this.specialIv = in.readUnsignedByte();
+
+        this.maxHp = in.readShort();
+        this.attack = in.readShort();
+        this.defense = in.readShort();
+        this.speed = in.readShort();
+        this.special = in.readShort();
+
+        if (this.species == null)
+            throw new IOException("Invalid species in save file!");
+
+        this.compactMoves();
+    }
+
+    /**
+     * Drops moves a save named but the move list no longer has, moving the rest up, so move slots are
+     * filled from the first one on like those of any other monster. An empty slot has no PP.
+     */
+    protected void compactMoves()
+    {
+        int next = 0;
+
+        for (int i = 0; i < this.moves.length; i++)
+        {
+            if (this.moves[i] != null)
+            {
+                this.moves[next] = this.moves[i];
+                this.movePP[next] = this.movePP[i];
+                next++;
+            }
+        }
+
+        for (int i = next; i < this.moves.length; i++)
+        {
+            this.moves[i] = null;
+            this.movePP[i] = 0;
+        }
+    }
+
     public String getDisplayString(int index)
     {
         StringBuilder s = new StringBuilder();
@@ -517,17 +713,8 @@ public class Monster implements ICanBattle
 
     public void printStats(ChannelWrapper cw)
     {
-        cw.messageChannel.createMessage(new Consumer<LegacyMessageCreateSpec>()
-        {
-            @Override
-            public void accept(LegacyMessageCreateSpec messageCreateSpec)
-            {
-                messageCreateSpec.addFile("/icon.png", getClass().getResourceAsStream(("/front/" + species.name.toUpperCase())
-                        .replace("♂", "m").replace("♀", "f").replace("'", "").toLowerCase() + ".png"));
-            }
-        }).block();
-
-        cw.messageChannel.createMessage(getStatsString()).block();
+        cw.sendImage(Sprites.getFront(this.species));
+        cw.send(getStatsString());
     }
 
     public boolean isShiny()
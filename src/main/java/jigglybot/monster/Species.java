@@ -1,15 +1,12 @@
 package jigglybot.monster;
 
-import discord4j.core.spec.legacy.LegacyMessageCreateSpec;
 import jigglybot.ChannelWrapper;
 import jigglybot.UserWrapper;
 import jigglybot.battle.action.Move;
-import jigglybot.location.Location;
-import jigglybot.location.SpawnEntry;
+import jigglybot.location.Nest;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.function.Consumer;
 
 import static jigglybot.monster.Type.*;
 
@@ -39,6 +36,9 @@ public class Species
     public final HashMap<Integer, Move> moveUnlocks = new HashMap<>();
     public final ArrayList<Move> learnableMoves = new ArrayList<>();
 
+    /** Where this species spawns, built by Location.setupNests() */
+    public Nest[] nests = new Nest[0];
+
     public static final HashMap<Integer, Species> by_num = new HashMap<>();
     public static final HashMap<String, Species> by_name = new HashMap<>();
 
@@ -78,7 +78,7 @@ public class Species
         if (user.dex[this.id] <= 0)
         {
             if (!queue)
-               c.messageChannel.createMessage("You have not discovered this POKéMON yet!").block();
+               c.send("You have not discovered this POKéMON yet!");
             else
                 c.queue("You have not discovered this POKéMON yet!");
 
@@ -99,27 +99,14 @@ public class Species
             s.append("```");
         }
 
-        ArrayList<Location> spawns = new ArrayList<>();
-        for (Location l: Location.allLocations)
-        {
-            for (SpawnEntry e: l.spawnEntries)
-            {
-                if (e.species == this)
-                {
-                    spawns.add(l);
-                    break;
-                }
-            }
-        }
-
         s.append("```").append(this.name).append("'s NEST:\n");
 
-        if (spawns.isEmpty())
+        if (this.nests.length == 0)
             s.append("AREA UNKNOWN");
 
-        for (Location l: spawns)
+        for (Nest n: this.nests)
         {
-            s.append(l.name).append("\n");
+            s.append(n).append("\n");
         }
 
         s.append("```");
@@ -135,23 +122,15 @@ public class Species
         s += "SPEED " + this.baseSpeed + "\n";
         s += "SPECIAL " + this.baseSpecial;*/
 
-        String img = ("/front/" + name).replace("♂", "m").replace("♀", "f").replace("'", "").toLowerCase() + ".png";
+        byte[] img = Sprites.getFront(this);
 
         if (!queue)
         {
-            c.messageChannel.createMessage(new Consumer<LegacyMessageCreateSpec>()
-            {
-                @Override
-                public void accept(LegacyMessageCreateSpec messageCreateSpec)
-                {
-                    messageCreateSpec.addFile("/icon.png", getClass().getResourceAsStream(img));
-                }
-            }).block();
-
-            c.messageChannel.createMessage(s.toString()).block();
+            c.sendImage(img);
+            c.send(s.toString());
         }
         else
-            c.queue("*" + img + "*" + s);
+            c.queue(img, s.toString());
     }
 
     public static void setup()
@@ -307,5 +286,7 @@ public class Species
         new Species("Dragonite", dragon, flying, 91, 134, 95, 80, 100, 218, xp_slow, 45);
         new Species("Mewtwo", psychic, 106, 110, 90, 130, 154, 220, xp_slow, 3);
         new Species("Mew", psychic, 100, 100, 100, 100, 100, 64, xp_medium_slow, 45);
+
+        Type.setupSpecies();
     }
 }
@@ -0,0 +1,85 @@
+package jigglybot.monster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Front and back sprites of every species, read from the classpath once at startup and kept as bytes
+ * indexed by species id, so sending an image needs no resource lookup or file name building.
+ */
+public class Sprites
+{
+    private static final Logger logger = LoggerFactory.getLogger(Sprites.class);
+
+    protected static byte[][] front = new byte[0][];
+    protected static byte[][] back = new byte[0][];
+
+    /**
+     * Loads the sprites of all registered species. Run after {@link Species#setup()}.
+     */
+    public static void setup()
+    {
+        byte[][] f = new byte[Species.currentID][];
+        byte[][] b = new byte[Species.currentID][];
+        int missing = 0;
+
+        for (Species s: Species.by_num.values())
+        {
+            String name = getFileName(s);
+
+            f[s.id] = load("/front/" + name + ".png");
+            b[s.id] = load("/back/" + name + "b.png");
+
+            if (f[s.id] == null || b[s.id] == null)
+                missing++;
+        }
+
+        front = f;
+        back = b;
+
+        if (missing > 0)
+            logger.warn("{} species are missing a sprite", missing);
+    }
+
+    /**
+     * Returns the front sprite, or null if there is none.
+     */
+    public static byte[] getFront(Species s)
+    {
+        byte[][] f = front;
+        return s.id < f.length ? f[s.id] : null;
+    }
+
+    /**
+     * Returns the back sprite, or null if there is none.
+     */
+    public static byte[] getBack(Species s)
+    {
+        byte[][] b = back;
+        return s.id < b.length ? b[s.id] : null;
+    }
+
+    public static String getFileName(Species s)
+    {
+        return s.name.replace("♂", "m").replace("♀", "f").replace("'", "").toLowerCase();
+    }
+
+    protected static byte[] load(String path)
+    {
+        try (InputStream in = Sprites.class.getResourceAsStream(path))
+        {
+            if (in == null)
+                return null;
+
+            return in.readAllBytes();
+        }
+        catch (IOException e)
+        {
+            logger.error("Failed to read sprite {}", path, e);
+            return null;
+        }
+    }
+}
@@ -37,6 +37,58 @@ public class Type
                     {1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 1.0, 2.0}
             };
 
+    public static final int types = 15;
+
+    public static final int effect_none = 0;
+    public static final int effect_not_very = 1;
+    public static final int effect_normal = 2;
+    public static final int effect_super = 3;
+
+    /**
+     * Effectiveness of every move type against every species, at move type * species count + species id.
+     * Built by {@link #setupSpecies()}, so a hit needs one array read instead of two table lookups.
+     */
+    protected static double[] speciesEffectiveness = new double[0];
+    protected static byte[] speciesCategory = new byte[0];
+    protected static int speciesCount = 0;
+
+    /**
+     * Builds the effectiveness of each type against each registered species. Run at the end of {@link Species#setup()}.
+     */
+    public static void setupSpecies()
+    {
+        int count = Species.currentID;
+        double[] e = new double[types * count];
+        byte[] c = new byte[types * count];
+
+        for (Species s: Species.by_num.values())
+        {
+            for (int t = 0; t < types; t++)
+            {
+                double amount = getEffectiveness(t, s.type1, s.type2);
+                e[t * count + s.id] = amount;
+                c[t * count + s.id] = (byte) getEffectiveCategory(amount);
+            }
+        }
+
+        speciesEffectiveness = e;
+        speciesCategory = c;
+        speciesCount = count;
+    }
+
+    public static double getEffectiveness(int moveType, Species s)
+    {
+        return speciesEffectiveness[moveType * speciesCount + s.id];
+    }
+
+    /**
+     * Returns one of the effect_ constants, which picks the message for the hit.
+     */
+    public static int getEffectiveCategory(int moveType, Species s)
+    {
+        return speciesCategory[moveType * speciesCount + s.id];
+    }
+
     public static double getEffectiveness(int moveType, int t1, int t2)
     {
         if (t1 == t2)
@@ -52,16 +104,33 @@ public class Type
 
     public static String getEffectiveMessage(double amount, String enemy)
     {
-        if (amount <= 0)
+        return getCategoryMessage(getEffectiveCategory(amount), enemy);
+    }
+
+    public static String getCategoryMessage(int category, String enemy)
+    {
+        if (category == effect_none)
             return "It's doesn't affect enemy " + enemy + "!";
-        else if (amount < 1.0)
+        else if (category == effect_not_very)
             return "It's not very effective...";
-        else if (amount == 1.0)
+        else if (category == effect_normal)
             return null;
         else
             return "It's super effective!";
     }
 
+    public static int getEffectiveCategory(double amount)
+    {
+        if (amount <= 0)
+            return effect_none;
+        else if (amount < 1.0)
+            return effect_not_very;
+        else if (amount == 1.0)
+            return effect_normal;
+        else
+            return effect_super;
+    }
+
     public static String getTypeString(int type)
     {
         if (type == 0)
@@ -0,0 +1,148 @@
+package jigglybot.outbound;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces requests to Discord so the bot stays under its rate limits instead of running into 429s.
+ *
+ * Every request takes a token from a global bucket; channel messages also take one from that
+ * channel's bucket. Requests in the interaction lane (replies to slash commands) may use the whole
+ * global bucket, while narration has to leave {@link #interaction_reserve} tokens untouched, so
+ * replies still go out promptly while a busy battle is being narrated. A burst of replies can only run
+ * the bucket {@link #interaction_max_debt} tokens short, so none of them waits long enough to miss its
+ * interaction's deadline; narration waits until the debt is paid back.
+ *
+ * Requests are plain Monos and are only delayed before being subscribed, so this can be driven by
+ * any publisher, not just Discord4J.
+ */
+public class OutboundScheduler
+{
+    public static final int lane_interaction = 0;
+    public static final int lane_narration = 1;
+
+    /** Discord allows 50 requests per second per bot; leave some headroom */
+    public static final double global_per_second = 45;
+
+    /** Messages per channel: a burst of 5, then one per second */
+    public static final double channel_burst = 5;
+    public static final double channel_per_second = 1;
+
+    public static final double interaction_reserve = 10;
+
+    /** How far replies may take the global bucket below empty; half a second's worth */
+    public static final double interaction_max_debt = global_per_second / 2;
+
+    /** Time source and timer; tests swap both out to run the buckets on a clock they advance by hand */
+    protected static volatile LongSupplier clock = System::nanoTime;
+    protected static volatile LongFunction<Mono<Void>> timer = nanos -> Mono.delay(Duration.ofNanos(nanos)).then();
+
+    protected static TokenBucket global = new TokenBucket(global_per_second, global_per_second, OutboundScheduler::now);
+    protected static final ConcurrentHashMap<Long, TokenBucket> channels = new ConcurrentHashMap<>();
+
+    /** Channel messages waiting their turn in a channel's outbox or being sent */
+    public static final AtomicInteger queued = new AtomicInteger();
+
+    /** Requests currently held back by a rate limit */
+    public static final AtomicInteger throttled = new AtomicInteger();
+
+    public static final AtomicLong[] sent = {new AtomicLong(), new AtomicLong()};
+    public static final AtomicLong[] totalWaitNanos = {new AtomicLong(), new AtomicLong()};
+    public static final LongAccumulator[] maxWaitNanos = {new LongAccumulator(Math::max, 0), new LongAccumulator(Math::max, 0)};
+
+    public static <T> Mono<T> schedule(long channel, int lane, Mono<T> request)
+    {
+        return Mono.defer(() -> schedule(channel, lane, request, now()));
+    }
+
+    /**
+     * Delays the request until the buckets allow it. The wait recorded for the lane runs from
+     * queuedAt, so time spent in a channel's outbox before getting here is counted too.
+     */
+    public static <T> Mono<T> schedule(long channel, int lane, Mono<T> request, long queuedAt)
+    {
+        return Mono.defer(() ->
+        {
+            Mono<Void> permit;
+
+            if (lane == lane_interaction)
+                permit = delay(global.reserve(-interaction_max_debt));
+            else
+            {
+                // Channel sends are already one at a time, so reserving ahead here is safe; the global bucket
+                // is only taken from when it's above the reserve, so narration can't run ahead of replies
+                TokenBucket c = channels.computeIfAbsent(channel, id -> new TokenBucket(channel_burst, channel_per_second, OutboundScheduler::now));
+                permit = delay(c.reserve()).then(takeGlobal(interaction_reserve));
+            }
+
+            return permit.then(Mono.defer(() ->
+            {
+                record(lane, queuedAt);
+                return request;
+            }));
+        });
+    }
+
+    protected static Mono<Void> takeGlobal(double keep)
+    {
+        return Mono.defer(() ->
+        {
+            long wait = global.tryTake(keep);
+
+            if (wait <= 0)
+                return Mono.empty();
+
+            return delay(wait).then(takeGlobal(keep));
+        });
+    }
+
+    protected static Mono<Void> delay(long nanos)
+    {
+        if (nanos <= 0)
+            return Mono.empty();
+
+        throttled.incrementAndGet();
+
+        return timer.apply(nanos)
+                .doFinally(s -> throttled.decrementAndGet())
+                .then();
+    }
+
+    protected static void record(int lane, long queuedAt)
+    {
+        long waited = now() - queuedAt;
+
+        sent[lane].incrementAndGet();
+        totalWaitNanos[lane].addAndGet(waited);
+        maxWaitNanos[lane].accumulate(waited);
+    }
+
+    public static long now()
+    {
+        return clock.getAsLong();
+    }
+
+    public static String getStats()
+    {
+        StringBuilder s = new StringBuilder("queued=").append(queued.get()).append(" throttled=").append(throttled.get());
+        String[] names = {"interaction", "narration"};
+
+        for (int i = 0; i < names.length; i++)
+        {
+            long n = sent[i].get();
+
+            s.append(" ").append(names[i]).append("[sent=").append(n)
+                    .append(" avgWaitMs=").append(n == 0 ? 0 : totalWaitNanos[i].get() / n / 1000000)
+                    .append(" maxWaitMs=").append(maxWaitNanos[i].get() / 1000000).append("]");
+        }
+
+        return s.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package jigglybot.outbound;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket that never blocks: taking a token returns how long the caller must wait before using it.
+ * Reservations may take the bucket negative, which makes later callers wait longer.
+ */
+public class TokenBucket
+{
+    public final double capacity;
+    public final double perSecond;
+
+    /** Nanosecond time source, {@link System#nanoTime} unless a test drives the bucket by hand */
+    protected final LongSupplier clock;
+
+    protected double tokens;
+    protected long lastRefill;
+
+    public TokenBucket(double capacity, double perSecond)
+    {
+        this(capacity, perSecond, System::nanoTime);
+    }
+
+    public TokenBucket(double capacity, double perSecond, LongSupplier clock)
+    {
+        this.capacity = capacity;
+        this.perSecond = perSecond;
+        this.clock = clock;
+        this.tokens = capacity;
+        this.lastRefill = clock.getAsLong();
+    }
+
+    /**
+     * Takes a token, and returns the nanoseconds until it may be used.
+     */
+    public long reserve()
+    {
+        return this.reserve(Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Takes a token without letting the bucket go below floor, so the wait returned is never more than it
+     * takes to refill from floor. Callers past that go ahead anyway, at the cost of the bucket's limit.
+     */
+    public synchronized long reserve(double floor)
+    {
+        this.refill();
+
+        double missing = Math.min(1 - this.tokens, 1 - floor);
+        this.tokens = Math.max(floor, this.tokens - 1);
+
+        return missing <= 0 ? 0 : (long) (missing / this.perSecond * 1e9);
+    }
+
+    /**
+     * Takes a token only if at least keep tokens would be left for others. Returns 0 if one was taken,
+     * otherwise the nanoseconds until it is worth trying again.
+     */
+    public synchronized long tryTake(double keep)
+    {
+        this.refill();
+
+        double missing = 1 + keep - this.tokens;
+
+        if (missing <= 0)
+        {
+            this.tokens--;
+            return 0;
+        }
+
+        return Math.max(1, (long) (missing / this.perSecond * 1e9));
+    }
+
+    protected void refill()
+    {
+        long now = this.clock.getAsLong();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.perSecond / 1e9);
+        this.lastRefill = now;
+    }
+
+    public synchronized double getTokens()
+    {
+        return this.tokens;
+    }
+}
@@ -0,0 +1,288 @@
+package jigglybot.save;
+
+import jigglybot.UserWrapper;
+import jigglybot.battle.action.Move;
+import jigglybot.monster.Monster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of changes made since a user's last {@link SaveFile} snapshot.
+ *
+ * Each record is framed as payload length, type, sequence number, payload and a CRC32, and the
+ * whole batch is synced before the append returns. Replay applies records newer than the
+ * snapshot's sequence number and stops at the first torn or corrupt record, which is then cut off.
+ * Changes that don't fit a record type (releases, withdrawals, resets) write a full snapshot instead.
+ */
+public class Journal
+{
+    private static final Logger logger = LoggerFactory.getLogger(Journal.class);
+
+    public static final byte record_squad = 1;
+    public static final byte record_storage_add = 2;
+    public static final byte record_dex = 3;
+
+    /** Records kept before the next flush writes a fresh snapshot and discards the journal */
+    public static final int compact_after_records = 64;
+
+    protected static final int max_record_length = 1 << 20;
+    protected static final int frame_length = 4 + 1 + 8 + 4;
+
+    public static File getFile(UserWrapper user)
+    {
+        return new File(UserWrapper.save_dir + "/" + user.id + ".journal");
+    }
+
+    /**
+     * Appends one record per kind of change and syncs them to disk.
+     */
+    public static void append(UserWrapper user, boolean squad, List<Monster> stored, boolean dex) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+        int records = 0;
+
+        if (squad)
+        {
+            writeRecord(out, record_squad, user.journalSeq + records + 1, writeSquad(user.squad));
+            records++;
+        }
+
+        if (!stored.isEmpty())
+        {
+            writeRecord(out, record_storage_add, user.journalSeq + records + 1, writeMonsters(stored));
+            records++;
+        }
+
+        if (dex)
+        {
+            ByteArrayOutputStream d = new ByteArrayOutputStream();
+            SaveFile.writeDex(new DataOutputStream(d), user.dex);
+            writeRecord(out, record_dex, user.journalSeq + records + 1, d.toByteArray());
+            records++;
+        }
+
+        if (records == 0)
+            return;
+
+        try (FileOutputStream fos = new FileOutputStream(getFile(user), true))
+        {
+            fos.write(buf.toByteArray());
+            fos.getFD().sync();
+        }
+
+        user.journalSeq += records;
+        user.journalRecords += records;
+    }
+
+    /**
+     * Applies records newer than the loaded snapshot, and truncates anything after the last intact record.
+     */
+    public static void replay(UserWrapper user) throws IOException
+    {
+        File f = getFile(user);
+
+        if (!f.exists())
+            return;
+
+        long good = 0;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f))))
+        {
+            while (true)
+            {
+                int length;
+                byte type;
+                long seq;
+                byte[] payload;
+                int crc;
+
+                try
+                {
+                    length = in.readInt();
+
+                    if (length < 0 || length > max_record_length)
+                        break;
+
+                    type = in.readByte();
+                    seq = in.readLong();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc = in.readInt();
+                }
+                catch (EOFException e)
+                {
+                    break;
+                }
+
+                if (crc != checksum(type, seq, payload))
+                    break;
+
+                good += frame_length + length;
+                user.journalRecords++;
+
+                if (seq > user.journalSeq)
+                {
+                    apply(user, type, payload);
+                    user.journalSeq = seq;
+                }
+            }
+        }
+
+        if (good < f.length())
+        {
+            logger.warn("Discarding {} bytes of incomplete journal for user {}", f.length() - good, user.id);
+
+            try (RandomAccessFile r = new RandomAccessFile(f, "rw"))
+            {
+                r.setLength(good);
+                r.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     * Moves a journal that couldn't be replayed aside, so the snapshot it belongs to is kept and the next
+     * append starts a new journal.
+     */
+    public static void quarantine(UserWrapper user)
+    {
+        File f = getFile(user);
+        File corrupt = new File(f.getPath() + ".corrupt-" + System.currentTimeMillis());
+
+        if (f.exists() && !f.renameTo(corrupt))
+            logger.error("Failed to move unreadable journal {}", f.getAbsolutePath());
+
+        user.journalRecords = 0;
+    }
+
+    public static void delete(UserWrapper user)
+    {
+        File f = getFile(user);
+
+        if (f.exists() && !f.delete())
+            logger.warn("Failed to delete journal {}", f.getAbsolutePath());
+
+        user.journalRecords = 0;
+    }
+
+    protected static void apply(UserWrapper user, byte type, byte[] payload) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        // Each record is read in full before any of it is applied, so one that fails to read changes nothing
+        if (type == record_squad)
+        {
+            Move[] moveTable = SaveFile.readMoveTable(in);
+            Monster[] squad = new Monster[user.squad.length];
+
+            for (int i = 0; i < squad.length; i++)
+            {
+                if (in.readBoolean())
+                    squad[i] = new Monster(in, moveTable, user);
+            }
+
+            for (int i = 0; i < squad.length; i++)
+            {
+                user.squad[i] = squad[i];
+
+                if (squad[i] != null)
+                    user.initialized = true;
+            }
+        }
+        else if (type == record_storage_add)
+        {
+            Move[] moveTable = SaveFile.readMoveTable(in);
+            int count = in.readInt();
+            ArrayList<Monster> added = new ArrayList<>();
+
+            for (int i = 0; i < count; i++)
+                added.add(new Monster(in, moveTable, user));
+
+            user.storage.addAll(added);
+        }
+        else if (type == record_dex)
+        {
+            int[] dex = user.dex.clone();
+            SaveFile.readDex(in, dex);
+            System.arraycopy(dex, 0, user.dex, 0, dex.length);
+        }
+        else
+            throw new IOException("Unknown journal record type " + type);
+    }
+
+    protected static byte[] writeSquad(Monster[] squad) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+
+        ArrayList<Monster> monsters = new ArrayList<>();
+        for (Monster m: squad)
+        {
+            if (m != null)
+                monsters.add(m);
+        }
+
+        int[] moveKeys = SaveFile.writeMoveTable(out, monsters);
+
+        for (Monster m: squad)
+        {
+            out.writeBoolean(m != null);
+
+            if (m != null)
+                m.write(out, moveKeys);
+        }
+
+        return buf.toByteArray();
+    }
+
+    protected static byte[] writeMonsters(List<Monster> monsters) throws IOException
+    {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buf);
+
+        int[] moveKeys = SaveFile.writeMoveTable(out, monsters);
+
+        out.writeInt(monsters.size());
+        for (Monster m: monsters)
+            m.write(out, moveKeys);
+
+        return buf.toByteArray();
+    }
+
+    protected static void writeRecord(DataOutputStream out, byte type, long seq, byte[] payload) throws IOException
+    {
+        out.writeInt(payload.length);
+        out.writeByte(type);
+        out.writeLong(seq);
+        out.write(payload);
+        out.writeInt(checksum(type, seq, payload));
+    }
+
+    protected static int checksum(byte type, long seq, byte[] payload)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+
+        for (int i = 56; i >= 0; i -= 8)
+            crc.update((int) (seq >>> i));
+
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
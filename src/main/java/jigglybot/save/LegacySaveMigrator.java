@@ -0,0 +1,106 @@
+package jigglybot.save;
+
+import jigglybot.UserWrapper;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Reads the old comma-separated text saves. {@link UserWrapper#load()} falls back to this
+ * for any file without the binary header, and the next save rewrites it as binary.
+ * Running main converts every save in the userdata directory at once.
+ */
+public class LegacySaveMigrator
+{
+    public static void read(UserWrapper user, File f) throws IOException
+    {
+        try (BufferedReader br = new BufferedReader(new FileReader(f)))
+        {
+            int monsterCount = 0;
+            int mode = 0;
+            String line = br.readLine();
+
+            while (line != null)
+            {
+                if (line.equals("squad"))
+                    mode = 1;
+                else if (line.equals("storage"))
+                    mode = 2;
+                else if (line.equals("dex"))
+                    mode = 3;
+                else
+                {
+                    if (mode == 1)
+                    {
+                        user.squad[monsterCount] = new Monster(line, user);
+                        monsterCount++;
+                        user.initialized = true;
+                    }
+                    else if (mode == 2)
+                    {
+                        user.storage.add(new Monster(line, user));
+                    }
+                    else if (mode == 3)
+                    {
+                        String[] s = line.split(",");
+
+                        for (int i = 0; i < s.length; i++)
+                        {
+                            user.dex[i] = Integer.parseInt(s[i]);
+                        }
+                    }
+                }
+
+                line = br.readLine();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Species.setup();
+        MoveList.setup();
+
+        File dir = new File(args.length > 0 ? args[0] : UserWrapper.save_dir);
+        File[] files = dir.listFiles();
+
+        if (files == null)
+        {
+            System.out.println("No save directory at " + dir.getAbsolutePath());
+            return;
+        }
+
+        int migrated = 0;
+
+        for (File f: files)
+        {
+            long id;
+
+            try
+            {
+                id = Long.parseLong(f.getName());
+            }
+            catch (NumberFormatException e)
+            {
+                continue;
+            }
+
+            if (SaveFile.isBinary(f))
+                continue;
+
+            UserWrapper u = new UserWrapper(id);
+
+            if (u.load() && u.save())
+                migrated++;
+            else
+                System.out.println("Failed to migrate " + f.getName());
+        }
+
+        System.out.println("Migrated " + migrated + " save files to binary format version " + SaveFile.version);
+    }
+}
@@ -0,0 +1,245 @@
+package jigglybot.save;
+
+import jigglybot.UserWrapper;
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Binary save format for a {@link UserWrapper}.
+ *
+ * Layout: magic, format version, journal sequence number, move table (names of the moves used in
+ * this file), squad, storage and dex. Monsters are fixed-width records written by {@link Monster#write}.
+ * Moves are stored by name once per file so reordering {@link MoveList} never corrupts saves.
+ *
+ * Version 2 added the journal sequence number: {@link Journal} records at or below it are
+ * already part of the snapshot and are skipped on replay.
+ */
+public class SaveFile
+{
+    private static final Logger logger = LoggerFactory.getLogger(SaveFile.class);
+
+    public static final int magic = 0x4A474C59; // "JGLY"
+    public static final int version = 2;
+
+    /**
+     * Writes a snapshot to a temporary file, syncs it to disk and renames it over the old save,
+     * so a crash at any point leaves either the old or the new save intact.
+     */
+    public static void write(UserWrapper user, File f) throws IOException
+    {
+        File tmp = new File(f.getPath() + ".tmp");
+
+        try (FileOutputStream fos = new FileOutputStream(tmp))
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            write(user, out);
+            out.flush();
+            fos.getFD().sync();
+        }
+
+        try
+        {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(tmp.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(f.getAbsoluteFile().getParentFile());
+    }
+
+    public static void write(UserWrapper user, DataOutputStream out) throws IOException
+    {
+        ArrayList<Monster> monsters = new ArrayList<>(user.storage.size() + user.squad.length);
+        int squadCount = 0;
+
+        for (Monster m: user.squad)
+        {
+            if (m != null)
+            {
+                monsters.add(m);
+                squadCount++;
+            }
+        }
+
+        monsters.addAll(user.storage);
+
+        out.writeInt(magic);
+        out.writeShort(version);
+        out.writeLong(user.journalSeq);
+
+        int[] moveKeys = writeMoveTable(out, monsters);
+
+        out.writeByte(squadCount);
+        for (Monster m: user.squad)
+        {
+            if (m != null)
+                m.write(out, moveKeys);
+        }
+
+        out.writeInt(user.storage.size());
+        for (Monster m: user.storage)
+            m.write(out, moveKeys);
+
+        writeDex(out, user.dex);
+    }
+
+    public static void read(UserWrapper user, File f) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f))))
+        {
+            read(user, in);
+        }
+    }
+
+    public static void read(UserWrapper user, DataInputStream in) throws IOException
+    {
+        if (in.readInt() != magic)
+            throw new IOException("Not a binary save file!");
+
+        int v = in.readUnsignedShort();
+
+        if (v > version)
+            throw new IOException("Save format version " + v + " is newer than supported version " + version + "!");
+
+        if (v >= 2)
+            user.journalSeq = in.readLong();
+
+        Move[] moveTable = readMoveTable(in);
+
+        int squadCount = in.readUnsignedByte();
+        for (int i = 0; i < squadCount; i++)
+        {
+            Monster m = new Monster(in, moveTable, user);
+
+            if (i < user.squad.length)
+                user.squad[i] = m;
+
+            user.initialized = true;
+        }
+
+        int storageCount = in.readInt();
+        user.storage.ensureCapacity(storageCount);
+        for (int i = 0; i < storageCount; i++)
+            user.storage.add(new Monster(in, moveTable, user));
+
+        readDex(in, user.dex);
+    }
+
+    /**
+     * Checks the magic header, so that old text saves can still be told apart and migrated.
+     */
+    public static boolean isBinary(File f) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(f)))
+        {
+            return f.length() >= 4 && in.readInt() == magic;
+        }
+    }
+
+    /**
+     * Writes the names of all moves known by the given monsters, and returns the index of each in the table by move id.
+     */
+    public static int[] writeMoveTable(DataOutput out, Iterable<Monster> monsters) throws IOException
+    {
+        int[] moveKeys = new int[MoveList.allMoves.size()];
+        Arrays.fill(moveKeys, -1);
+
+        ArrayList<Move> moveTable = new ArrayList<>();
+
+        for (Monster m: monsters)
+        {
+            for (Move mo: m.moves)
+            {
+                if (mo != null && mo.id >= 0 && moveKeys[mo.id] < 0)
+                {
+                    moveKeys[mo.id] = moveTable.size();
+                    moveTable.add(mo);
+                }
+            }
+        }
+
+        out.writeShort(moveTable.size());
+        for (Move m: moveTable)
+            out.writeUTF(m.name.toLowerCase());
+
+        return moveKeys;
+    }
+
+    /**
+     * Reads the move table. A move that no longer exists is left null, and {@link Monster#read} drops it from the monsters that know it.
+     */
+    public static Move[] readMoveTable(DataInput in) throws IOException
+    {
+        Move[] moveTable = new Move[in.readUnsignedShort()];
+        for (int i = 0; i < moveTable.length; i++)
+        {
+            String name = in.readUTF();
+            moveTable[i] = MoveList.by_name.get(name);
+
+            if (moveTable[i] == null)
+                logger.warn("Unknown move {} in save file, dropping it", name);
+        }
+
+        return moveTable;
+    }
+
+    public static void writeDex(DataOutput out, int[] dex) throws IOException
+    {
+        out.writeShort(dex.length);
+        for (int d: dex)
+            out.writeByte(d);
+    }
+
+    public static void readDex(DataInput in, int[] dex) throws IOException
+    {
+        int dexCount = in.readUnsignedShort();
+        for (int i = 0; i < dexCount; i++)
+        {
+            int d = in.readUnsignedByte();
+
+            if (i < dex.length)
+                dex[i] = d;
+        }
+    }
+
+    /**
+     * Makes a rename in this directory durable. Not every platform allows opening a directory, so this is best effort.
+     */
+    protected static void syncDirectory(File dir)
+    {
+        if (dir == null)
+            return;
+
+        try (FileChannel c = FileChannel.open(dir.toPath(), StandardOpenOption.READ))
+        {
+            c.force(true);
+        }
+        catch (IOException e)
+        {
+            // Not supported here (e.g. on Windows); the rename itself is still atomic
+        }
+    }
+}
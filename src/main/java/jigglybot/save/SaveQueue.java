@@ -0,0 +1,159 @@
+package jigglybot.save;
+
+import jigglybot.UserWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for user saves.
+ *
+ * Game code calls {@link UserWrapper#markDirty()} instead of saving directly. The first mark
+ * schedules a flush after a short window and later marks within that window are merged into it,
+ * so a whole battle costs one write. All file I/O runs on a single dedicated thread, which also
+ * keeps writes and deletes for the same user in order.
+ */
+public class SaveQueue
+{
+    private static final Logger logger = LoggerFactory.getLogger(SaveQueue.class);
+
+    public static final long coalesce_window_ms = 2000;
+
+    protected static final ConcurrentHashMap<Long, UserWrapper> pending = new ConcurrentHashMap<>();
+
+    /** Users dropped from the cache whose final flush hasn't finished yet */
+    protected static final ConcurrentHashMap<Long, UserWrapper> evicted = new ConcurrentHashMap<>();
+
+    protected static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r ->
+    {
+        Thread t = new Thread(r, "jigglybot-save");
+        t.setDaemon(true);
+        return t;
+    });
+
+    protected static volatile boolean shutdown = false;
+
+    public static void markDirty(UserWrapper user)
+    {
+        if (shutdown)
+        {
+            user.flush();
+            return;
+        }
+
+        if (pending.putIfAbsent(user.id, user) == null)
+            executor.schedule(() -> flush(user.id), coalesce_window_ms, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Writes a full snapshot immediately on the save thread, for when the caller needs to report the result.
+     */
+    public static CompletableFuture<Boolean> saveNow(UserWrapper user)
+    {
+        return CompletableFuture.supplyAsync(() ->
+        {
+            pending.remove(user.id, user);
+            return user.save();
+        }, executor);
+    }
+
+    /**
+     * Drops any pending save and deletes the save file and journal, ordered after any write already in progress.
+     */
+    public static CompletableFuture<Void> delete(UserWrapper user)
+    {
+        return CompletableFuture.runAsync(() ->
+        {
+            pending.remove(user.id, user);
+
+            if (user.getFile().exists() && !user.getFile().delete())
+                logger.warn("Failed to delete save file {}", user.getFile().getAbsolutePath());
+
+            Journal.delete(user);
+        }, executor);
+    }
+
+    /**
+     * Flushes a user that was just dropped from the cache. Until that finishes, {@link #reclaim} hands the
+     * same instance back to the cache so nothing is read from a file that is about to change.
+     */
+    public static void evict(UserWrapper user)
+    {
+        if (shutdown)
+        {
+            user.flush();
+            return;
+        }
+
+        evicted.put(user.id, user);
+
+        executor.execute(() ->
+        {
+            pending.remove(user.id, user);
+
+            if (!user.flush())
+                logger.warn("Failed to save evicted user {}", user.id);
+
+            evicted.remove(user.id, user);
+        });
+    }
+
+    public static UserWrapper reclaim(long id)
+    {
+        return evicted.get(id);
+    }
+
+    public static boolean isPending(UserWrapper user)
+    {
+        return pending.get(user.id) == user;
+    }
+
+    protected static void flush(long id)
+    {
+        UserWrapper user = pending.remove(id);
+
+        if (user != null && !user.flush())
+        {
+            logger.warn("Failed to save user {}, retrying", id);
+            markDirty(user);
+        }
+    }
+
+    /**
+     * Writes every pending save now and stops the save thread. Safe to call more than once.
+     */
+    public static synchronized void shutdown()
+    {
+        if (shutdown)
+            return;
+
+        shutdown = true;
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        for (Long id: new ArrayList<>(pending.keySet()))
+            executor.execute(() -> flush(id));
+
+        executor.shutdown();
+
+        try
+        {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                logger.error("Timed out waiting for {} saves to finish", pending.size());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        for (UserWrapper user: pending.values())
+            user.flush();
+
+        pending.clear();
+        logger.info("Save queue drained");
+    }
+}
@@ -0,0 +1,85 @@
+package jigglybot;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Commands arrive on the gateway's event loop and must never block it. Reactor refuses block() on its
+ * non-blocking threads, so these fail if command work ever runs on the thread it was submitted from.
+ */
+public class NonBlockingDispatchTest
+{
+    @Test
+    public void blockingOnTheEventLoopFails()
+    {
+        // Makes sure the check the other tests rely on is really there
+        assertThrows(IllegalStateException.class, () ->
+                Mono.fromCallable(() -> Mono.delay(Duration.ofMillis(10)).block())
+                        .subscribeOn(Schedulers.parallel())
+                        .block());
+    }
+
+    @Test
+    public void mailboxTasksRunOnBlockingThreads()
+    {
+        ChannelWrapper channel = new ChannelWrapper(1, Mono.never());
+        AtomicBoolean nonBlocking = new AtomicBoolean(true);
+
+        // Submitted from a non-blocking thread, as the gateway does
+        Long result = Mono.defer(() -> channel.execute(() ->
+                {
+                    nonBlocking.set(Schedulers.isInNonBlockingThread());
+                    return Mono.delay(Duration.ofMillis(10)).block();
+                }))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofSeconds(5));
+
+        assertFalse(nonBlocking.get());
+        assertEquals(0L, result);
+    }
+
+    @Test
+    public void sendingDoesNotWaitForTheChannel()
+    {
+        // The channel never resolves, so a send that waited for it would never return
+        ChannelWrapper channel = new ChannelWrapper(2, Mono.never());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                Mono.fromRunnable(() -> channel.send("Hello"))
+                        .subscribeOn(Schedulers.parallel())
+                        .block());
+    }
+
+    @Test
+    public void cancelledTaskDoesNotRun() throws InterruptedException
+    {
+        ChannelWrapper channel = new ChannelWrapper(3, Mono.never());
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+
+        // Holds up the mailbox, the way a slow command does
+        channel.execute(() -> release.await(5, TimeUnit.SECONDS)).subscribe();
+
+        // Given up on while waiting its turn, as a timed out command is
+        channel.execute(() -> ran.getAndSet(true)).subscribe().dispose();
+        channel.execute(done::countDown).subscribe();
+
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+}
@@ -0,0 +1,25 @@
+package jigglybot;
+
+import jigglybot.battle.action.MoveList;
+import jigglybot.location.Location;
+import jigglybot.monster.Species;
+
+/**
+ * Loads the game data tests need. The setup methods add to static lists, so they may only run once per JVM.
+ */
+public class TestData
+{
+    protected static boolean loaded = false;
+
+    public static synchronized void setup()
+    {
+        if (loaded)
+            return;
+
+        Species.setup();
+        Location.setup();
+        MoveList.setup();
+
+        loaded = true;
+    }
+}
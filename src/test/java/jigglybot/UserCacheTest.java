@@ -0,0 +1,126 @@
+package jigglybot;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class UserCacheTest
+{
+    protected static final long channel_id = 9100;
+
+    @BeforeAll
+    public static void setup()
+    {
+        TestData.setup();
+    }
+
+    @AfterEach
+    public void cleanup()
+    {
+        ChannelWrapper.wrappers.remove(channel_id);
+    }
+
+    protected static ArrayList<Long> ids(UserCache cache)
+    {
+        synchronized (cache)
+        {
+            return new ArrayList<>(cache.users.keySet());
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        UserCache cache = new UserCache(3, 60000);
+
+        UserWrapper first = cache.get(1);
+        cache.get(2);
+        cache.get(3);
+
+        // Touching 1 makes 2 the oldest
+        assertSame(first, cache.get(1));
+        cache.get(4);
+
+        assertEquals(3, cache.size());
+        assertEquals(Arrays.asList(3L, 1L, 4L), ids(cache));
+        assertEquals(1, cache.evictions.get());
+
+        assertEquals(1, cache.hits.get());
+        assertEquals(4, cache.misses.get());
+    }
+
+    @Test
+    public void pinnedUsersStay()
+    {
+        UserCache cache = new UserCache(2, 60000);
+
+        UserWrapper battling = cache.get(1);
+        battling.inBattle = true;
+
+        UserWrapper talking = cache.get(2);
+        ChannelWrapper c = new ChannelWrapper(channel_id, Mono.empty());
+        c.currentDialog = new Dialog(c, talking)
+        {
+            @Override
+            public void execute()
+            {
+            }
+
+            @Override
+            public void input(String s)
+            {
+            }
+        };
+        ChannelWrapper.wrappers.put(channel_id, c);
+
+        // Everyone older is pinned, so the new user goes over the size rather than being dropped on arrival
+        UserWrapper added = cache.get(3);
+
+        assertEquals(3, cache.size());
+        assertSame(added, cache.get(3));
+        assertSame(battling, cache.get(1));
+        assertSame(talking, cache.get(2));
+        assertEquals(0, cache.evictions.get());
+
+        // Once a pin is released the next miss brings the cache back down to size
+        battling.inBattle = false;
+        c.currentDialog = null;
+        cache.get(4);
+
+        assertEquals(2, cache.size());
+        assertEquals(Arrays.asList(2L, 4L), ids(cache));
+    }
+
+    @Test
+    public void evictsIdleUsers()
+    {
+        UserCache cache = new UserCache(10, 60000);
+
+        UserWrapper idle = cache.get(1);
+        UserWrapper battling = cache.get(2);
+        cache.get(3);
+
+        long old = System.currentTimeMillis() - 120000;
+        idle.lastAccess = old;
+        battling.lastAccess = old;
+        battling.inBattle = true;
+
+        cache.evictIdle();
+
+        assertEquals(Arrays.asList(2L, 3L), ids(cache));
+        assertEquals(1, cache.evictions.get());
+
+        // An evicted user comes back as a miss
+        long misses = cache.misses.get();
+        assertNotNull(cache.get(1));
+        assertEquals(misses + 1, cache.misses.get());
+    }
+}
@@ -0,0 +1,142 @@
+package jigglybot.commands;
+
+import discord4j.discordjson.json.ApplicationCommandData;
+import discord4j.discordjson.json.ApplicationCommandOptionChoiceData;
+import discord4j.discordjson.json.ApplicationCommandOptionData;
+import discord4j.discordjson.json.ApplicationCommandRequest;
+import discord4j.discordjson.json.ImmutableApplicationCommandData;
+import discord4j.discordjson.json.ImmutableApplicationCommandOptionData;
+import discord4j.discordjson.json.ImmutableApplicationCommandRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CommandRegistrarTest
+{
+    protected static ApplicationCommandRequest request(String name, ApplicationCommandOptionData... options)
+    {
+        ImmutableApplicationCommandRequest.Builder b = ApplicationCommandRequest.builder().name(name).description("The " + name + " command");
+
+        for (ApplicationCommandOptionData o: options)
+            b.addOption(o);
+
+        return b.build();
+    }
+
+    /** What Discord sends back for a command; options only when there are some, and no type */
+    protected static ApplicationCommandData registered(String name, ApplicationCommandOptionData... options)
+    {
+        ImmutableApplicationCommandData.Builder b = ApplicationCommandData.builder()
+                .id(1)
+                .applicationId(2)
+                .version(3)
+                .name(name)
+                .description("The " + name + " command");
+
+        if (options.length > 0)
+            b.options(Arrays.asList(options));
+
+        return b.build();
+    }
+
+    protected static ImmutableApplicationCommandOptionData.Builder option(String name, int type)
+    {
+        return ApplicationCommandOptionData.builder().name(name).description("The " + name).type(type);
+    }
+
+    protected static ApplicationCommandOptionChoiceData choice(String name, Object value)
+    {
+        return ApplicationCommandOptionChoiceData.builder().name(name).value(value).build();
+    }
+
+    @Test
+    public void sameCommandsNeedNoChanges()
+    {
+        List<ApplicationCommandRequest> ours = Arrays.asList(request("help"), request("pokemon", option("number", 4).required(true).build()));
+        List<ApplicationCommandData> theirs = Arrays.asList(registered("help"), registered("pokemon", option("number", 4).required(true).build()));
+
+        assertEquals(Collections.emptyList(), CommandRegistrar.diff(ours, theirs));
+    }
+
+    @Test
+    public void falseFlagIsStoredAsAbsent()
+    {
+        // We send required: false, Discord leaves it out
+        List<ApplicationCommandRequest> ours = Collections.singletonList(request("start", option("pokemon", 3).required(false).build()));
+        List<ApplicationCommandData> theirs = Collections.singletonList(registered("start", option("pokemon", 3).build()));
+
+        assertEquals(Collections.emptyList(), CommandRegistrar.diff(ours, theirs));
+
+        List<ApplicationCommandData> required = Collections.singletonList(registered("start", option("pokemon", 3).required(true).build()));
+        assertEquals(Collections.singletonList("~start"), CommandRegistrar.diff(ours, required));
+    }
+
+    @Test
+    public void choiceValuesCompareAcrossNumberTypes()
+    {
+        // An int sent to Discord comes back parsed as a long, or the other way round
+        ApplicationCommandOptionData sent = option("number", 4).addChoice(choice("One", 1)).addChoice(choice("Two", 2)).build();
+        ApplicationCommandOptionData parsed = option("number", 4).addChoice(choice("One", 1L)).addChoice(choice("Two", 2L)).build();
+        ApplicationCommandOptionData changed = option("number", 4).addChoice(choice("One", 1L)).addChoice(choice("Two", 3L)).build();
+
+        assertTrue(CommandRegistrar.sameChoices(sent.choices(), parsed.choices()));
+        assertFalse(CommandRegistrar.sameChoices(sent.choices(), changed.choices()));
+        assertEquals(Collections.singletonList("~pokemon"),
+                CommandRegistrar.diff(Collections.singletonList(request("pokemon", sent)), Collections.singletonList(registered("pokemon", changed))));
+    }
+
+    @Test
+    public void missingChoicesAndOptionsAreEmpty()
+    {
+        ApplicationCommandOptionData none = option("number", 4).build();
+        ApplicationCommandOptionData empty = option("number", 4).choices(Collections.emptyList()).options(Collections.emptyList()).build();
+
+        assertTrue(CommandRegistrar.sameChoices(none.choices(), empty.choices()));
+        assertTrue(CommandRegistrar.sameOptions(none.options(), empty.options()));
+        assertTrue(CommandRegistrar.sameOptions(request("help").options(), registered("help").options()));
+    }
+
+    @Test
+    public void addedRemovedAndChangedCommands()
+    {
+        List<ApplicationCommandRequest> ours = Arrays.asList(
+                request("help"),
+                request("heal"),
+                request("swap", option("first", 4).build(), option("second", 4).build()));
+
+        List<ApplicationCommandData> theirs = Arrays.asList(
+                registered("help"),
+                registered("swap", option("first", 4).build()),
+                registered("reset"));
+
+        assertEquals(Arrays.asList("+heal", "~swap", "-reset"), CommandRegistrar.diff(ours, theirs));
+    }
+
+    @Test
+    public void changedDescriptionOrOptionType()
+    {
+        List<ApplicationCommandRequest> ours = Arrays.asList(request("help"), request("move", option("slot", 4).build()));
+        List<ApplicationCommandData> theirs = Arrays.asList(
+                ApplicationCommandData.builder().from(registered("help")).description("Old help").build(),
+                registered("move", option("slot", 3).build()));
+
+        assertEquals(Arrays.asList("~help", "~move"), CommandRegistrar.diff(ours, theirs));
+    }
+
+    @Test
+    public void typeDefaultsToChatInput()
+    {
+        ApplicationCommandRequest typed = ApplicationCommandRequest.builder().from(request("help")).type(1).build();
+        ApplicationCommandData user = ApplicationCommandData.builder().from(registered("help")).type(2).build();
+
+        assertEquals(1, CommandRegistrar.type(request("help").type()));
+        assertEquals(Collections.emptyList(), CommandRegistrar.diff(Collections.singletonList(typed), Collections.singletonList(registered("help"))));
+        assertEquals(Collections.singletonList("~help"), CommandRegistrar.diff(Collections.singletonList(request("help")), Collections.singletonList(user)));
+    }
+}
@@ -0,0 +1,89 @@
+package jigglybot.commands;
+
+import discord4j.core.spec.EmbedCreateSpec;
+import discord4j.core.spec.InteractionApplicationCommandCallbackReplyMono;
+import discord4j.core.spec.InteractionFollowupCreateSpec;
+import discord4j.core.spec.InteractionReplyEditSpec;
+import discord4j.core.spec.MessageCreateFields;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ResponseTest
+{
+    /** A reply using everything a reply can carry */
+    protected static InteractionApplicationCommandCallbackReplyMono fullReply(StubCommandEvent event, boolean ephemeral)
+    {
+        return event.reply("Your POKéDEX")
+                .withEphemeral(ephemeral)
+                .withEmbeds(EmbedCreateSpec.builder().title("BULBASAUR").build())
+                .withFiles(MessageCreateFields.File.of("sprite.png", new ByteArrayInputStream(new byte[]{1, 2, 3})));
+    }
+
+    /** Starts a command that is deferred publicly straight away */
+    protected static Response deferred(StubCommandEvent event)
+    {
+        assertEquals(0L, Response.budgets.get(event.getCommandName()));
+
+        Response r = Response.start(event, event.getCommandName(), 1, System.nanoTime());
+        assertEquals("defer", event.last().kind);
+
+        return r;
+    }
+
+    @Test
+    public void replyInTimeIsSentAsIs()
+    {
+        StubCommandEvent event = new StubCommandEvent("help", 9300, 9301);
+        Response r = Response.start(event, "help", 9300, System.nanoTime());
+
+        Response.send(event.reply("Hello!")).block(Duration.ofSeconds(5));
+        r.finish();
+
+        assertEquals(1, event.sent.size());
+        assertEquals("reply", event.last().kind);
+    }
+
+    @Test
+    public void deferredReplyKeepsEmbedsAndFiles()
+    {
+        StubCommandEvent event = new StubCommandEvent("dex", 9302, 9303);
+        Response r = deferred(event);
+
+        Response.send(fullReply(event, false)).block(Duration.ofSeconds(5));
+        r.finish();
+
+        assertEquals("edit", event.last().kind);
+        InteractionReplyEditSpec edit = (InteractionReplyEditSpec) event.last().spec;
+
+        assertEquals("Your POKéDEX", edit.content().get().get());
+        assertEquals("BULBASAUR", edit.embeds().get().get().get(0).title().get());
+        assertEquals(1, edit.files().size());
+        assertEquals("sprite.png", edit.files().get(0).name());
+    }
+
+    @Test
+    public void ephemeralReplyToPublicDeferralKeepsEmbedsAndFiles()
+    {
+        StubCommandEvent event = new StubCommandEvent("dex", 9304, 9305);
+        Response r = deferred(event);
+
+        Response.send(fullReply(event, true)).block(Duration.ofSeconds(5));
+        r.finish();
+
+        // The public "thinking" message is replaced with an ephemeral follow-up
+        assertEquals("delete", event.sent.get(event.sent.size() - 2).kind);
+        assertEquals("followup", event.last().kind);
+        InteractionFollowupCreateSpec followup = (InteractionFollowupCreateSpec) event.last().spec;
+
+        assertTrue(followup.ephemeral().get());
+        assertEquals("Your POKéDEX", followup.content().get());
+        assertEquals("BULBASAUR", followup.embeds().get(0).title().get());
+        assertEquals(1, followup.files().size());
+        assertEquals("sprite.png", followup.files().get(0).name());
+    }
+}
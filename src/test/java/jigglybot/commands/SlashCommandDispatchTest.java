@@ -0,0 +1,125 @@
+package jigglybot.commands;
+
+import discord4j.core.spec.InteractionApplicationCommandCallbackSpec;
+import jigglybot.ChannelWrapper;
+import jigglybot.TestData;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pushes slash commands through the real handler, from a non-blocking thread as the gateway does, and checks
+ * where their work runs and that the gate is left as it was found.
+ */
+public class SlashCommandDispatchTest
+{
+    protected static SlashCommandManager manager;
+
+    @BeforeAll
+    public static void setup()
+    {
+        TestData.setup();
+        manager = new SlashCommandManager(StubCommandEvent.gateway);
+    }
+
+    protected static String content(StubCommandEvent.Sent sent)
+    {
+        return ((InteractionApplicationCommandCallbackSpec) sent.spec).content().get();
+    }
+
+    /** Handles the event on a non-blocking thread, and waits for it to be done */
+    protected static void handle(StubCommandEvent event)
+    {
+        Mono.defer(() -> manager.handleSlashCommand(event))
+                .subscribeOn(Schedulers.parallel())
+                .block(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void commandRunsOnAWorker()
+    {
+        StubCommandEvent event = new StubCommandEvent("help", 9400, 9401);
+        int inFlight = CommandGate.inFlight.get();
+
+        handle(event);
+
+        assertEquals(1, event.sent.size());
+        assertEquals("reply", event.last().kind);
+        assertTrue(content(event.last()).contains("/start"));
+        assertTrue(event.last().thread.getName().startsWith("jigglybot-commands"), event.last().thread.getName());
+
+        ChannelWrapper channel = ChannelWrapper.wrappers.get(9400L);
+        assertEquals(0, channel.commands.get());
+        assertEquals(inFlight, CommandGate.inFlight.get());
+    }
+
+    @Test
+    public void busyChannelDoesNotHoldUpTheEventLoop() throws InterruptedException
+    {
+        StubCommandEvent first = new StubCommandEvent("help", 9402, 9403);
+        handle(first);
+
+        // Something slow is running on the channel
+        ChannelWrapper channel = ChannelWrapper.wrappers.get(9402L);
+        CountDownLatch release = new CountDownLatch(1);
+        channel.execute(() -> release.await(5, TimeUnit.SECONDS)).subscribe();
+
+        StubCommandEvent event = new StubCommandEvent("help", 9402, 9404);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Handing the command over returns at once, and it waits its turn without a thread
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () ->
+                Mono.fromRunnable(() -> manager.handleSlashCommand(event).doFinally(s -> done.countDown()).subscribe())
+                        .subscribeOn(Schedulers.parallel())
+                        .block());
+
+        assertEquals(1, channel.commands.get());
+        assertTrue(event.sent.isEmpty());
+
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals("reply", event.last().kind);
+        assertEquals(0, channel.commands.get());
+    }
+
+    @Test
+    public void fullChannelGetsTheBusyReply()
+    {
+        StubCommandEvent first = new StubCommandEvent("help", 9405, 9406);
+        handle(first);
+
+        ChannelWrapper channel = ChannelWrapper.wrappers.get(9405L);
+
+        for (int i = 0; i < CommandGate.max_per_channel; i++)
+            assertTrue(CommandGate.tryEnter(channel));
+
+        try
+        {
+            StubCommandEvent event = new StubCommandEvent("help", 9405, 9407);
+            handle(event);
+
+            // The busy reply goes out straight away; wait for it rather than the work, which there is none of
+            for (int i = 0; i < 100 && event.sent.isEmpty(); i++)
+                Mono.delay(Duration.ofMillis(10)).block();
+
+            assertEquals(1, event.sent.size());
+            assertEquals(CommandGate.busy_message, content(event.last()));
+            assertEquals(CommandGate.max_per_channel, channel.commands.get());
+        }
+        finally
+        {
+            for (int i = 0; i < CommandGate.max_per_channel; i++)
+                CommandGate.exit(channel);
+        }
+    }
+}
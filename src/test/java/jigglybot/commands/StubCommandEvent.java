@@ -0,0 +1,109 @@
+package jigglybot.commands;
+
+import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.interaction.ChatInputInteractionEvent;
+import discord4j.core.object.command.Interaction;
+import discord4j.core.object.entity.Message;
+import discord4j.core.object.entity.channel.MessageChannel;
+import discord4j.core.spec.InteractionApplicationCommandCallbackSpec;
+import discord4j.core.spec.InteractionCallbackSpec;
+import discord4j.core.spec.InteractionFollowupCreateSpec;
+import discord4j.core.spec.InteractionReplyEditSpec;
+import discord4j.discordjson.Id;
+import discord4j.discordjson.json.ApplicationCommandInteractionData;
+import discord4j.discordjson.json.InteractionData;
+import discord4j.discordjson.json.MemberData;
+import discord4j.discordjson.json.UserData;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A slash command from a guild member that never reaches Discord. Everything the bot sends back for it is
+ * kept in {@link #sent}, in order, along with the thread it was sent from.
+ */
+public class StubCommandEvent extends ChatInputInteractionEvent
+{
+    /** A client with nothing behind it; only the parts an event needs to be built are set */
+    protected static final GatewayDiscordClient gateway = new GatewayDiscordClient(null, null, null, null, null, g -> null, null);
+
+    public static class Sent
+    {
+        /** One of reply, defer, edit, delete or followup */
+        public final String kind;
+        public final Object spec;
+        public final Thread thread;
+
+        public Sent(String kind, Object spec)
+        {
+            this.kind = kind;
+            this.spec = spec;
+            this.thread = Thread.currentThread();
+        }
+    }
+
+    public final List<Sent> sent = new CopyOnWriteArrayList<>();
+
+    public StubCommandEvent(String command, long channel, long user)
+    {
+        super(gateway, null, new Interaction(gateway, InteractionData.builder()
+                .id(Id.of(1))
+                .applicationId(Id.of(2))
+                .type(2)
+                .token("token")
+                .version(1)
+                .guildId(Id.of(3))
+                .channelId(Id.of(channel))
+                .member(MemberData.builder()
+                        .user(UserData.builder().id(Id.of(user)).username("ASH").discriminator("0001").build())
+                        .joinedAt("2020-01-01T00:00:00Z")
+                        .deaf(false)
+                        .mute(false)
+                        .build())
+                .data(ApplicationCommandInteractionData.builder().id("4").name(command).type(1).build())
+                .build())
+        {
+            @Override
+            public Mono<MessageChannel> getChannel()
+            {
+                return Mono.never();
+            }
+        });
+    }
+
+    public Sent last()
+    {
+        return this.sent.get(this.sent.size() - 1);
+    }
+
+    @Override
+    public Mono<Void> reply(InteractionApplicationCommandCallbackSpec spec)
+    {
+        return Mono.fromRunnable(() -> this.sent.add(new Sent("reply", spec)));
+    }
+
+    @Override
+    public Mono<Void> deferReply(InteractionCallbackSpec spec)
+    {
+        return Mono.fromRunnable(() -> this.sent.add(new Sent("defer", spec)));
+    }
+
+    @Override
+    public Mono<Message> editReply(InteractionReplyEditSpec spec)
+    {
+        return Mono.fromRunnable(() -> this.sent.add(new Sent("edit", spec)));
+    }
+
+    @Override
+    public Mono<Void> deleteReply()
+    {
+        return Mono.fromRunnable(() -> this.sent.add(new Sent("delete", null)));
+    }
+
+    @Override
+    public Mono<Message> createFollowup(InteractionFollowupCreateSpec spec)
+    {
+        return Mono.fromRunnable(() -> this.sent.add(new Sent("followup", spec)));
+    }
+}
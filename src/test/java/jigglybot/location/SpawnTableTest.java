@@ -0,0 +1,114 @@
+package jigglybot.location;
+
+import jigglybot.TestData;
+import jigglybot.monster.Species;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpawnTableTest
+{
+    @BeforeAll
+    public static void setup()
+    {
+        TestData.setup();
+    }
+
+    /**
+     * Goes through every number pick can be given and checks each entry comes up exactly as often as its weight says.
+     */
+    protected static void assertExact(SpawnTable table, String name)
+    {
+        int n = table.entries.length;
+        int[] counts = new int[n];
+
+        for (int r = 0; r < n * table.totalWeight; r++)
+        {
+            SpawnEntry e = table.pick(r);
+            int index = -1;
+
+            // Entries are told apart by identity, since a location may list the same species twice
+            for (int i = 0; i < n; i++)
+            {
+                if (table.entries[i] == e)
+                    index = i;
+            }
+
+            counts[index]++;
+        }
+
+        for (int i = 0; i < n; i++)
+            assertEquals(table.entries[i].weight * n, counts[i], name + " entry " + i + " (" + table.entries[i].species.name + ")");
+    }
+
+    @Test
+    public void everyLocationPicksByWeight()
+    {
+        int checked = 0;
+
+        for (Location l: Location.allLocations)
+        {
+            if (l.spawnEntries.isEmpty())
+                continue;
+
+            SpawnTable table = l.getSpawnTable();
+            assertEquals(l.spawnEntries.size(), table.entries.length, l.name);
+            assertExact(table, l.name);
+            checked++;
+        }
+
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void unevenWeights()
+    {
+        int[][] weights = {{1}, {1, 1}, {1, 1000}, {7, 3, 3, 1}, {5, 5, 5, 5, 5}, {2, 30, 1, 1, 9, 40, 17}};
+
+        for (int[] w: weights)
+        {
+            SpawnEntry[] entries = new SpawnEntry[w.length];
+
+            for (int i = 0; i < w.length; i++)
+                entries[i] = new SpawnEntry("pidgey", new int[]{5}, w[i]);
+
+            assertExact(new SpawnTable(Arrays.asList(entries)), Arrays.toString(w));
+        }
+    }
+
+    @Test
+    public void tableIsRebuiltWhenEntriesAreAdded()
+    {
+        Location l = Location.route_1;
+        SpawnTable before = l.getSpawnTable();
+        SpawnEntry added = new SpawnEntry("mew", new int[]{5}, 25);
+
+        l.spawnEntries.add(added);
+
+        try
+        {
+            SpawnTable after = l.getSpawnTable();
+
+            assertNotSame(before, after);
+            assertSame(after, l.getSpawnTable());
+            assertEquals(before.entries.length + 1, after.entries.length);
+            assertEquals(before.totalWeight + added.weight, after.totalWeight);
+            assertExact(after, l.name);
+
+            // The dex's nests are rebuilt along with the table
+            Species mew = Species.by_name.get("mew");
+            assertTrue(Arrays.stream(mew.nests).anyMatch(n -> n.location == l && n.weight == added.weight));
+        }
+        finally
+        {
+            l.spawnEntries.remove(added);
+            l.getSpawnTable();
+        }
+    }
+}
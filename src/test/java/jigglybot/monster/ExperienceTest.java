@@ -0,0 +1,103 @@
+package jigglybot.monster;
+
+import jigglybot.TestData;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ExperienceTest
+{
+    @BeforeAll
+    public static void setup()
+    {
+        TestData.setup();
+    }
+
+    @Test
+    public void tableMatchesFormula()
+    {
+        for (int type = 0; type < Monster.level_xp.length; type++)
+        {
+            for (int level = 0; level < Monster.level_xp[type].length; level++)
+            {
+                assertEquals(Monster.computeLevelXP(type, level), Monster.level_xp[type][level], "growth rate " + type + " level " + level);
+                assertEquals(Monster.computeLevelXP(type, level), Monster.getLevelXP(type, level), "growth rate " + type + " level " + level);
+            }
+
+            // Past the table, the formula is used directly
+            assertEquals(Monster.computeLevelXP(type, 150), Monster.getLevelXP(type, 150));
+        }
+    }
+
+    @Test
+    public void addXPMatchesLevellingOneLevelAtATime()
+    {
+        SplittableRandom random = new SplittableRandom(16);
+        ArrayList<Species> species = new ArrayList<>(Species.by_num.values());
+
+        for (int i = 0; i < 100000; i++)
+        {
+            Species s = species.get(random.nextInt(species.size()));
+            int level = 1 + random.nextInt(100);
+            long seed = random.nextLong();
+
+            Monster a = new Monster(s, level, new SplittableRandom(seed));
+            Monster b = new Monster(s, level, new SplittableRandom(seed));
+
+            int hpEv = random.nextInt(70000);
+            int statEv = random.nextInt(70000);
+            int hp = random.nextInt(a.maxHp + 1);
+
+            for (Monster m: new Monster[]{a, b})
+            {
+                m.hpEv = hpEv;
+                m.attackEv = statEv;
+                m.specialEv = statEv;
+                m.recalculateStats();
+                m.hp = hp;
+            }
+
+            // Mostly small wins, with the odd one big enough to gain many levels at once
+            int xp = random.nextInt(10) == 0 ? random.nextInt(2000000) : random.nextInt(2000);
+
+            String where = s.name + " L" + level + " +" + xp + "xp";
+
+            assertEquals(addXPOneLevelAtATime(b, xp), a.addXP(xp), where);
+            assertEquals(b.level, a.level, where);
+            assertEquals(b.xp, a.xp, where);
+            assertEquals(b.hp, a.hp, where);
+            assertEquals(b.maxHp, a.maxHp, where);
+            assertEquals(b.attack, a.attack, where);
+            assertEquals(b.defense, a.defense, where);
+            assertEquals(b.speed, a.speed, where);
+            assertEquals(b.special, a.special, where);
+        }
+    }
+
+    /**
+     * addXP as it was before the table, recalculating stats after every level
+     */
+    protected static boolean addXPOneLevelAtATime(Monster m, int xp)
+    {
+        m.xp += xp;
+        int maxXP = Monster.computeLevelXP(m.species.xpGain, 100);
+
+        if (m.xp > maxXP)
+            m.xp = maxXP;
+
+        boolean lvlup = false;
+
+        while (Monster.computeLevelXP(m.species.xpGain, m.level + 1) <= m.xp)
+        {
+            lvlup = true;
+            m.level++;
+            m.recalculateStats();
+        }
+
+        return lvlup;
+    }
+}
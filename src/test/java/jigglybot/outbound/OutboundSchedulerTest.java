@@ -0,0 +1,252 @@
+package jigglybot.outbound;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs the scheduler on a clock the test advances by hand, so every request goes out at the exact time the
+ * buckets allow and nothing depends on how fast the machine is.
+ */
+public class OutboundSchedulerTest
+{
+    protected static final long ms = 1000000;
+    protected static final long s = 1000 * ms;
+
+    /**
+     * Nanosecond clock that only moves when advanced. Waits started on it finish in deadline order as it
+     * passes them, on the advancing thread, with the clock reading their deadline.
+     */
+    protected static class ManualClock
+    {
+        protected static class Waiter
+        {
+            final long deadline;
+            final long order;
+            final MonoSink<Void> sink;
+
+            Waiter(long deadline, long order, MonoSink<Void> sink)
+            {
+                this.deadline = deadline;
+                this.order = order;
+                this.sink = sink;
+            }
+        }
+
+        protected final PriorityQueue<Waiter> waiters = new PriorityQueue<>((a, b) -> a.deadline != b.deadline
+                ? Long.compare(a.deadline, b.deadline)
+                : Long.compare(a.order, b.order));
+
+        protected long now = 0;
+        protected long order = 0;
+
+        public synchronized long now()
+        {
+            return this.now;
+        }
+
+        public Mono<Void> sleep(long nanos)
+        {
+            return Mono.create(sink ->
+            {
+                synchronized (this)
+                {
+                    this.waiters.add(new Waiter(this.now + nanos, this.order++, sink));
+                }
+            });
+        }
+
+        public void advance(long nanos)
+        {
+            long target;
+
+            synchronized (this)
+            {
+                target = this.now + nanos;
+            }
+
+            while (true)
+            {
+                Waiter w;
+
+                synchronized (this)
+                {
+                    w = this.waiters.peek();
+
+                    if (w == null || w.deadline > target)
+                    {
+                        this.now = target;
+                        return;
+                    }
+
+                    this.waiters.poll();
+                    this.now = Math.max(this.now, w.deadline);
+                }
+
+                // Outside the lock, since finishing a wait may start another
+                w.sink.success();
+            }
+        }
+    }
+
+    protected ManualClock clock;
+
+    protected LongSupplier realClock;
+    protected LongFunction<Mono<Void>> realTimer;
+    protected TokenBucket realGlobal;
+
+    @BeforeEach
+    public void useManualClock()
+    {
+        this.realClock = OutboundScheduler.clock;
+        this.realTimer = OutboundScheduler.timer;
+        this.realGlobal = OutboundScheduler.global;
+
+        this.clock = new ManualClock();
+        OutboundScheduler.clock = this.clock::now;
+        OutboundScheduler.timer = this.clock::sleep;
+
+        // Every test starts with full buckets
+        OutboundScheduler.global = new TokenBucket(OutboundScheduler.global_per_second, OutboundScheduler.global_per_second, OutboundScheduler::now);
+        OutboundScheduler.channels.clear();
+    }
+
+    @AfterEach
+    public void restoreClock()
+    {
+        OutboundScheduler.clock = this.realClock;
+        OutboundScheduler.timer = this.realTimer;
+        OutboundScheduler.global = this.realGlobal;
+        OutboundScheduler.channels.clear();
+    }
+
+    /** A request that reports when it was sent */
+    protected Mono<Long> request()
+    {
+        return Mono.fromCallable(this.clock::now);
+    }
+
+    /** Subscribes, then advances the clock a millisecond at a time until the result is in */
+    protected <T> T run(Mono<T> m)
+    {
+        CompletableFuture<T> result = m.toFuture();
+
+        for (int i = 0; i < 60000 && !result.isDone(); i++)
+            this.clock.advance(ms);
+
+        assertTrue(result.isDone(), "still waiting after a minute");
+        return result.join();
+    }
+
+    @Test
+    public void channelBurstThenOnePerSecond()
+    {
+        // One at a time, the way a channel's outbox sends them
+        List<Long> sent = this.run(Flux.range(0, 8)
+                .concatMap(i -> OutboundScheduler.schedule(1001, OutboundScheduler.lane_narration, this.request()))
+                .collectList());
+
+        assertEquals(8, sent.size());
+
+        for (int i = 0; i < OutboundScheduler.channel_burst; i++)
+            assertEquals(0, (long) sent.get(i), "burst message " + i + " was held back");
+
+        for (int i = (int) OutboundScheduler.channel_burst; i < sent.size(); i++)
+        {
+            double expected = (i - OutboundScheduler.channel_burst + 1) / OutboundScheduler.channel_per_second * s;
+            assertEquals(expected, sent.get(i), ms, "message " + i);
+        }
+    }
+
+    @Test
+    public void narrationStaysUnderGlobalRate()
+    {
+        int n = 120;
+
+        List<Long> sent = this.run(Flux.range(0, n)
+                .flatMap(i -> OutboundScheduler.schedule(2000 + i, OutboundScheduler.lane_narration, this.request()), n)
+                .collectList());
+
+        assertEquals(n, sent.size());
+        Collections.sort(sent);
+
+        // Narration may use what's above the reserve straight away, and the refill after that
+        double available = OutboundScheduler.global_per_second - OutboundScheduler.interaction_reserve;
+
+        for (int i = 0; i < n; i++)
+        {
+            double allowed = available + sent.get(i) / 1e9 * OutboundScheduler.global_per_second + 1e-6;
+            assertTrue(i + 1 <= allowed, (i + 1) + " requests sent after " + sent.get(i) / ms + "ms");
+        }
+
+        // And it does use it; the last request goes out as soon as the refill allows
+        double last = (n - available) / OutboundScheduler.global_per_second * s;
+        assertEquals(last, sent.get(n - 1), ms);
+    }
+
+    @Test
+    public void interactionsGoAheadOfNarration()
+    {
+        int n = 80;
+        ArrayList<Long> narration = new ArrayList<>();
+
+        CompletableFuture<List<Long>> flood = Flux.range(0, n)
+                .flatMap(i -> OutboundScheduler.schedule(3000 + i, OutboundScheduler.lane_narration, this.request()), n)
+                .collectList()
+                .toFuture();
+
+        // Narration has used everything above the reserve, and the rest is queued behind the refill
+        long reply = this.run(OutboundScheduler.schedule(3000, OutboundScheduler.lane_interaction, this.request()));
+        assertEquals(0, reply, "reply waited behind narration");
+
+        narration.addAll(this.run(Mono.fromFuture(flood)));
+
+        int available = (int) (OutboundScheduler.global_per_second - OutboundScheduler.interaction_reserve);
+        assertEquals(available, narration.stream().filter(t -> t == 0).count());
+
+        // The reply's token came out of the reserve, so narration waits for it to be refilled too
+        long first = narration.stream().filter(t -> t > 0).min(Long::compare).get();
+        assertEquals(2 / OutboundScheduler.global_per_second * s, first, ms);
+    }
+
+    @Test
+    public void interactionBurstWaitIsCapped()
+    {
+        int n = 100;
+
+        CompletableFuture<List<Long>> burst = Flux.range(0, n)
+                .flatMap(i -> OutboundScheduler.schedule(4000 + i, OutboundScheduler.lane_interaction, this.request()), n)
+                .collectList()
+                .toFuture();
+
+        // The replies ran the bucket into debt as they were scheduled; narration waits for that to be paid back
+        long narration = this.run(OutboundScheduler.schedule(4999, OutboundScheduler.lane_narration, this.request()));
+        List<Long> sent = this.run(Mono.fromFuture(burst));
+
+        assertEquals(n, sent.size());
+
+        long cap = (long) ((1 + OutboundScheduler.interaction_max_debt) / OutboundScheduler.global_per_second * s);
+
+        for (long t: sent)
+            assertTrue(t <= cap, "reply waited " + t / ms + "ms, cap is " + cap / ms + "ms");
+
+        assertEquals((int) OutboundScheduler.global_per_second, sent.stream().filter(t -> t == 0).count());
+
+        double owed = OutboundScheduler.interaction_max_debt + OutboundScheduler.interaction_reserve + 1;
+        assertEquals(owed / OutboundScheduler.global_per_second * s, narration, ms);
+    }
+}
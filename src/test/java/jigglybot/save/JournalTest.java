@@ -0,0 +1,238 @@
+package jigglybot.save;
+
+import jigglybot.TestData;
+import jigglybot.UserWrapper;
+import jigglybot.monster.Monster;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Builds a snapshot and a journal on disk, damages them the ways a crash can, and checks what a reload gets back.
+ */
+public class JournalTest
+{
+    protected static final long id = 9000;
+
+    protected final SplittableRandom random = new SplittableRandom(3);
+
+    @BeforeAll
+    public static void setup()
+    {
+        TestData.setup();
+    }
+
+    @BeforeEach
+    public void clean()
+    {
+        File dir = new File(UserWrapper.save_dir);
+        dir.mkdirs();
+
+        File[] files = dir.listFiles((d, name) -> name.startsWith(id + "."));
+
+        for (File f: files)
+            f.delete();
+
+        new File(dir, "" + id).delete();
+    }
+
+    /**
+     * The user a fresh load should come back as; loading marks every species owned as caught.
+     */
+    protected static UserWrapper expected(UserWrapper u)
+    {
+        UserWrapper e = new UserWrapper(u.id);
+        e.squad = u.squad.clone();
+        e.storage.addAll(u.storage);
+        e.dex = u.dex.clone();
+
+        for (Monster m: e.squad)
+        {
+            if (m != null)
+                e.dex[m.species.id] = 2;
+        }
+
+        for (Monster m: e.storage)
+            e.dex[m.species.id] = 2;
+
+        return e;
+    }
+
+    protected static UserWrapper reload()
+    {
+        UserWrapper u = new UserWrapper(id);
+        assertTrue(u.load());
+        return u;
+    }
+
+    /** A user with a snapshot on disk and no journal */
+    protected UserWrapper saved()
+    {
+        UserWrapper u = SaveFileTest.randomUser(id, this.random);
+        assertTrue(u.save());
+        assertFalse(Journal.getFile(u).exists());
+        return u;
+    }
+
+    /** Makes a change of each kind and appends it: a squad swap, a catch and the dex, in that order */
+    protected void change(UserWrapper u) throws IOException
+    {
+        u.squad[0] = SaveFileTest.randomMonster(this.random, u);
+        Monster caught = SaveFileTest.randomMonster(this.random, u);
+        u.storage.add(caught);
+        u.dex[u.squad[0].species.id] = 2;
+        u.dex[caught.species.id] = 2;
+
+        Journal.append(u, true, Collections.singletonList(caught), true);
+    }
+
+    @Test
+    public void replaysAppendedRecords() throws IOException
+    {
+        UserWrapper u = this.saved();
+        this.change(u);
+        this.change(u);
+
+        assertEquals(6, u.journalRecords);
+
+        UserWrapper loaded = reload();
+        SaveFileTest.assertSameUser(expected(u), loaded);
+        assertEquals(u.journalSeq, loaded.journalSeq);
+        assertEquals(6, loaded.journalRecords);
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws IOException
+    {
+        UserWrapper u = this.saved();
+        this.change(u);
+        UserWrapper before = expected(u);
+        long seq = u.journalSeq;
+
+        this.change(u);
+
+        // A crash halfway through writing the dex record of the second change
+        File f = Journal.getFile(u);
+        try (RandomAccessFile r = new RandomAccessFile(f, "rw"))
+        {
+            r.setLength(f.length() - 5);
+        }
+
+        UserWrapper loaded = reload();
+
+        // The squad and storage records of the second change survived, the dex record didn't
+        before.squad[0] = u.squad[0];
+        before.storage.add(u.storage.get(u.storage.size() - 1));
+        before.dex = expected(before).dex;
+
+        SaveFileTest.assertSameUser(before, loaded);
+        assertEquals(seq + 2, loaded.journalSeq);
+        assertEquals(5, loaded.journalRecords);
+
+        // The torn record is cut off on disk, so a record appended after it is read back
+        loaded.dex[2] = loaded.dex[2] == 0 ? 1 : loaded.dex[2];
+        Journal.append(loaded, false, Collections.emptyList(), true);
+        before.dex[2] = loaded.dex[2];
+
+        UserWrapper again = reload();
+        SaveFileTest.assertSameUser(before, again);
+        assertEquals(seq + 3, again.journalSeq);
+    }
+
+    @Test
+    public void corruptRecordEndsReplay() throws IOException
+    {
+        UserWrapper u = this.saved();
+        this.change(u);
+        UserWrapper before = expected(u);
+        long length = Journal.getFile(u).length();
+
+        this.change(u);
+
+        // Flip a byte in the squad record of the second change; its checksum no longer matches
+        File f = Journal.getFile(u);
+        try (RandomAccessFile r = new RandomAccessFile(f, "rw"))
+        {
+            r.seek(length + Journal.frame_length);
+            int b = r.read();
+            r.seek(length + Journal.frame_length);
+            r.write(b ^ 0xFF);
+        }
+
+        UserWrapper loaded = reload();
+
+        // Nothing after the corrupt record is applied, even though the records themselves are intact
+        SaveFileTest.assertSameUser(before, loaded);
+        assertEquals(length, f.length());
+    }
+
+    @Test
+    public void recordsInTheSnapshotAreSkipped() throws IOException
+    {
+        UserWrapper u = this.saved();
+        this.change(u);
+
+        // A crash after a snapshot was written but before the journal it replaced was deleted
+        File f = Journal.getFile(u);
+        File kept = new File(f.getPath() + ".kept");
+        Files.copy(f.toPath(), kept.toPath());
+
+        assertTrue(u.save());
+        Files.move(kept.toPath(), f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        UserWrapper loaded = reload();
+
+        // The storage addition would show up twice if it were applied again
+        SaveFileTest.assertSameUser(expected(u), loaded);
+        assertEquals(u.journalSeq, loaded.journalSeq);
+    }
+
+    @Test
+    public void unreadableJournalKeepsTheSnapshot() throws IOException
+    {
+        UserWrapper u = this.saved();
+        this.change(u);
+        UserWrapper before = expected(u);
+
+        // An intact record that can't be applied
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        Journal.writeRecord(new DataOutputStream(buf), (byte) 99, u.journalSeq + 1, new byte[]{1, 2, 3});
+
+        try (FileOutputStream out = new FileOutputStream(Journal.getFile(u), true))
+        {
+            out.write(buf.toByteArray());
+        }
+
+        UserWrapper loaded = reload();
+
+        // The snapshot and the records before the bad one are kept, the journal is moved aside
+        SaveFileTest.assertSameUser(before, loaded);
+        assertTrue(u.getFile().exists());
+        assertFalse(Journal.getFile(u).exists());
+
+        File[] corrupt = new File(UserWrapper.save_dir).listFiles((d, name) -> name.startsWith(id + ".journal.corrupt-"));
+        assertEquals(1, corrupt.length, Arrays.toString(corrupt));
+
+        // And a full save is on its way, so the repair doesn't wait for the user to change something
+        assertTrue(SaveQueue.isPending(loaded));
+        assertTrue(loaded.flush());
+        assertFalse(Journal.getFile(u).exists());
+        SaveFileTest.assertSameUser(before, reload());
+    }
+}
@@ -0,0 +1,339 @@
+package jigglybot.save;
+
+import jigglybot.TestData;
+import jigglybot.UserWrapper;
+import jigglybot.battle.BattleEngine;
+import jigglybot.battle.action.Move;
+import jigglybot.battle.action.MoveList;
+import jigglybot.monster.Monster;
+import jigglybot.monster.Species;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SaveFileTest
+{
+    @TempDir
+    public File dir;
+
+    @BeforeAll
+    public static void setup()
+    {
+        TestData.setup();
+    }
+
+    /**
+     * A monster with every saved field set to something other than its default
+     */
+    protected static Monster randomMonster(SplittableRandom random, UserWrapper owner)
+    {
+        ArrayList<Species> species = new ArrayList<>(Species.by_num.values());
+        Monster m = new Monster(species.get(random.nextInt(species.size())), 1 + random.nextInt(100), random);
+
+        m.isWild = false;
+        m.owner = owner.id;
+        m.name = random.nextBoolean() ? m.species.name.toUpperCase() : "POKéMON " + random.nextInt(1000);
+        m.originalTrainer = random.nextLong();
+        m.xp = random.nextInt(1000000);
+        m.status = random.nextInt(7);
+
+        m.hpEv = random.nextInt(70000);
+        m.attackEv = random.nextInt(70000);
+        m.defenseEv = random.nextInt(70000);
+        m.speedEv = random.nextInt(70000);
+        m.specialEv = random.nextInt(70000);
+        m.recalculateStats();
+        m.hp = random.nextInt(m.maxHp + 1);
+
+        // Three moves from the constructor, and sometimes a fourth; otherwise the last slot stays empty
+        if (random.nextBoolean())
+            m.moves[3] = MoveList.allMoves.get(random.nextInt(MoveList.allMoves.size()));
+
+        for (int i = 0; i < m.moves.length; i++)
+            m.movePP[i] = m.moves[i] == null ? 0 : random.nextInt(m.moves[i].maxPP + 1);
+
+        return m;
+    }
+
+    protected static UserWrapper randomUser(long id, SplittableRandom random)
+    {
+        UserWrapper u = new UserWrapper(id);
+        u.journalSeq = random.nextInt(1000);
+
+        for (int i = 0; i < 4; i++)
+            u.squad[i] = randomMonster(random, u);
+
+        for (int i = 0; i < 50; i++)
+            u.storage.add(randomMonster(random, u));
+
+        for (int i = 0; i < u.dex.length; i++)
+            u.dex[i] = random.nextInt(3);
+
+        return u;
+    }
+
+    public static void assertSameMonster(Monster expected, Monster actual, String where)
+    {
+        assertNotNull(actual, where);
+        assertSame(expected.species, actual.species, where);
+        assertEquals(expected.name, actual.name, where);
+        assertEquals(expected.hp, actual.hp, where);
+        assertEquals(expected.level, actual.level, where);
+        assertEquals(expected.status, actual.status, where);
+        assertArrayEquals(expected.moves, actual.moves, where);
+        assertArrayEquals(expected.movePP, actual.movePP, where);
+        assertEquals(expected.originalTrainer, actual.originalTrainer, where);
+        assertEquals(expected.xp, actual.xp, where);
+        assertEquals(expected.hpEv, actual.hpEv, where);
+        assertEquals(expected.attackEv, actual.attackEv, where);
+        assertEquals(expected.defenseEv, actual.defenseEv, where);
+        assertEquals(expected.speedEv, actual.speedEv, where);
+        assertEquals(expected.specialEv, actual.specialEv, where);
+        assertEquals(expected.hpIv, actual.hpIv, where);
+        assertEquals(expected.attackIv, actual.attackIv, where);
+        assertEquals(expected.defenseIv, actual.defenseIv, where);
+        assertEquals(expected.speedIv, actual.speedIv, where);
+        assertEquals(expected.specialIv, actual.specialIv, where);
+        assertEquals(expected.maxHp, actual.maxHp, where);
+        assertEquals(expected.attack, actual.attack, where);
+        assertEquals(expected.defense, actual.defense, where);
+        assertEquals(expected.speed, actual.speed, where);
+        assertEquals(expected.special, actual.special, where);
+        assertEquals(expected.owner, actual.owner, where);
+        assertFalse(actual.isWild, where);
+    }
+
+    public static void assertSameUser(UserWrapper expected, UserWrapper actual)
+    {
+        for (int i = 0; i < expected.squad.length; i++)
+        {
+            if (expected.squad[i] == null)
+                assertNull(actual.squad[i], "squad " + i);
+            else
+                assertSameMonster(expected.squad[i], actual.squad[i], "squad " + i);
+        }
+
+        assertEquals(expected.storage.size(), actual.storage.size());
+
+        for (int i = 0; i < expected.storage.size(); i++)
+            assertSameMonster(expected.storage.get(i), actual.storage.get(i), "storage " + i);
+
+        assertArrayEquals(expected.dex, actual.dex);
+    }
+
+    protected static byte[] write(UserWrapper u) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SaveFile.write(u, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    protected static UserWrapper read(long id, byte[] data) throws IOException
+    {
+        UserWrapper u = new UserWrapper(id);
+        SaveFile.read(u, new DataInputStream(new ByteArrayInputStream(data)));
+        return u;
+    }
+
+    @Test
+    public void roundTrip() throws IOException
+    {
+        SplittableRandom random = new SplittableRandom(1);
+
+        for (int i = 0; i < 20; i++)
+        {
+            UserWrapper u = randomUser(100 + i, random);
+            UserWrapper loaded = read(u.id, write(u));
+
+            assertSameUser(u, loaded);
+            assertEquals(u.journalSeq, loaded.journalSeq);
+            assertTrue(loaded.initialized);
+        }
+    }
+
+    @Test
+    public void roundTripThroughFile() throws IOException
+    {
+        UserWrapper u = randomUser(200, new SplittableRandom(2));
+        File f = new File(this.dir, "200");
+
+        SaveFile.write(u, f);
+
+        assertTrue(SaveFile.isBinary(f));
+        assertFalse(new File(f.getPath() + ".tmp").exists());
+
+        UserWrapper loaded = new UserWrapper(u.id);
+        SaveFile.read(loaded, f);
+        assertSameUser(u, loaded);
+    }
+
+    @Test
+    public void moveNamesAreUnique()
+    {
+        // Saves name their moves, so two moves with one name would load as the same move
+        for (Move m: MoveList.allMoves)
+            assertSame(m, MoveList.by_name.get(m.name.toLowerCase()), m.name);
+    }
+
+    @Test
+    public void emptyMoveSlotStaysEmpty() throws IOException
+    {
+        UserWrapper u = new UserWrapper(300);
+        Monster m = randomMonster(new SplittableRandom(3), u);
+        m.moves[3] = null;
+        m.movePP[3] = 0;
+        u.squad[0] = m;
+
+        Monster loaded = read(u.id, write(u)).squad[0];
+
+        assertSameMonster(m, loaded, "monster");
+        assertNull(loaded.moves[3]);
+    }
+
+    @Test
+    public void moveTableListsEachMoveOnce() throws IOException
+    {
+        UserWrapper u = randomUser(400, new SplittableRandom(4));
+        HashSet<Move> known = new HashSet<>();
+
+        for (Monster m: u.squad)
+        {
+            if (m != null)
+                known.addAll(Arrays.asList(m.moves));
+        }
+
+        for (Monster m: u.storage)
+            known.addAll(Arrays.asList(m.moves));
+
+        known.remove(null);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(write(u)));
+        assertEquals(SaveFile.magic, in.readInt());
+        assertEquals(SaveFile.version, in.readUnsignedShort());
+        assertEquals(u.journalSeq, in.readLong());
+
+        Move[] table = SaveFile.readMoveTable(in);
+        assertEquals(known, new HashSet<>(Arrays.asList(table)));
+        assertEquals(known.size(), table.length);
+    }
+
+    @Test
+    public void unknownMoveIsDropped() throws IOException
+    {
+        Move tackle = MoveList.by_name.get("tackle");
+        Move growl = MoveList.by_name.get("growl");
+
+        UserWrapper u = new UserWrapper(500);
+        Monster m = randomMonster(new SplittableRandom(5), u);
+        m.moves[0] = tackle;
+        m.moves[1] = growl;
+        m.moves[2] = tackle;
+        m.moves[3] = null;
+        m.movePP = new int[]{10, 20, 30, 0};
+
+        // A save made when the move list had a move it no longer has: the table names "growl" something else
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SaveFile.magic);
+        out.writeShort(SaveFile.version);
+        out.writeLong(0);
+        out.writeShort(2);
+        out.writeUTF("tackle");
+        out.writeUTF("removed move");
+
+        int[] moveKeys = new int[MoveList.allMoves.size()];
+        moveKeys[tackle.id] = 0;
+        moveKeys[growl.id] = 1;
+
+        out.writeByte(1);
+        m.write(out, moveKeys);
+        out.writeInt(0);
+        SaveFile.writeDex(out, u.dex);
+
+        Monster loaded = read(u.id, bytes.toByteArray()).squad[0];
+
+        // The unknown move is gone and the moves after it moved up with their PP
+        assertArrayEquals(new Move[]{tackle, tackle, null, null}, loaded.moves);
+        assertArrayEquals(new int[]{10, 30, 0, 0}, loaded.movePP);
+
+        // Everything that goes through the moves still works
+        assertNotNull(loaded.getStatsString());
+        assertSame(tackle, BattleEngine.chooseMove(loaded, null, new SplittableRandom(6)));
+    }
+
+    @Test
+    public void legacyTextSaveMigrates() throws IOException
+    {
+        UserWrapper u = randomUser(600, new SplittableRandom(7));
+        File f = new File(this.dir, "600");
+
+        // Text saves were written in the platform charset, which may not have had an é
+        for (Monster m: u.storage)
+            m.name = m.species.name.toUpperCase();
+
+        for (Monster m: u.squad)
+        {
+            if (m != null)
+                m.name = m.species.name.toUpperCase();
+        }
+
+        // The text format the bot used to save in
+        try (PrintWriter pw = new PrintWriter(f))
+        {
+            pw.println("squad");
+
+            for (Monster m: u.squad)
+            {
+                if (m != null)
+                    pw.println(m.toString());
+            }
+
+            pw.println("storage");
+
+            for (Monster m: u.storage)
+                pw.println(m.toString());
+
+            pw.println("dex");
+
+            StringBuilder s = new StringBuilder();
+            for (int d: u.dex)
+                s.append(d).append(",");
+
+            pw.println(s.substring(0, s.length() - 1));
+        }
+
+        assertFalse(SaveFile.isBinary(f));
+
+        UserWrapper legacy = new UserWrapper(u.id);
+        LegacySaveMigrator.read(legacy, f);
+        assertSameUser(u, legacy);
+
+        // And it comes out of the binary format the same
+        SaveFile.write(legacy, f);
+        assertTrue(SaveFile.isBinary(f));
+
+        UserWrapper migrated = new UserWrapper(u.id);
+        SaveFile.read(migrated, f);
+        assertSameUser(u, migrated);
+    }
+}